@@ -0,0 +1,205 @@
+package io.oreto.gungnir.cli;
+
+import io.oreto.gungnir.cli.feature.Feature;
+import io.oreto.gungnir.cli.feature.FeatureContext;
+import io.oreto.gungnir.cli.feature.Features;
+import io.oreto.gungnir.cli.feature.MainClass;
+import io.oreto.gungnir.cli.template.StagedTree;
+import io.oreto.gungnir.cli.util.LineDiff;
+import io.oreto.gungnir.cli.util.PomTransformer;
+import io.oreto.gungnir.cli.util.Str;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+/**
+ * Add a feature to an existing application in place.
+ * Only the pom dependencies, the main class hooks and the sources of the feature are touched,
+ * the rest of the application is never read.
+ */
+@CommandLine.Command(name = "add", description = "Add a feature to an existing application")
+public class Add implements Callable<Integer> {
+    static final String SRC_MAIN_JAVA = "src/main/java";
+    /** create options recording that a feature was selected, json providers record their name instead */
+    static final Map<String, String> FEATURE_OPTIONS = Map.of("jooq", "database", "guice", "di", "jte", "jte");
+
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec;
+
+    @CommandLine.Parameters(index = "0", description = "The feature to add, such as jooq, guice or jte")
+    String feature;
+
+    @CommandLine.Parameters(index = "1", defaultValue = ".", description = "The application directory")
+    String appPath;
+
+    @CommandLine.Option(names = "--dry-run", description = "Show the changes as a diff without making them")
+    boolean dryRun;
+
+    @CommandLine.Option(names = "--template", description = "Template directory, git repository or zip/tar.gz archive")
+    String template;
+
+    @CommandLine.Option(names = "--offline", description = "Only use the locally cached template")
+    boolean offline;
+
+    @CommandLine.Option(names = "--remote", description = "Use the latest template instead of the embedded one")
+    boolean remote;
+
+    @CommandLine.Option(names = "--cwd", hidden = true, description = "Directory relative paths are resolved against")
+    Path cwd;
+
+    /**
+     * Computes a result, or throws an exception if unable to do so.
+     * @return computed result
+     * @throws Exception if unable to compute a result
+     */
+    @Override
+    public Integer call() throws Exception {
+        PrintWriter out = spec.commandLine().getOut();
+        Path app = cwd == null ? Paths.get(appPath) : cwd.resolve(appPath);
+        Path pomFile = app.resolve(Create.POM);
+        if (!Files.isRegularFile(pomFile))
+            throw new NoSuchFileException(pomFile.toString(), null, "not a maven project");
+        String pom = Files.readString(pomFile);
+        if (Features.find(feature).isEmpty())
+            throw new CommandLine.ParameterException(spec.commandLine(), String.format("unknown feature %s, one of %s"
+                    , feature, Features.all().stream().map(Feature::name).collect(Collectors.joining(", "))));
+
+        String mainClass = PomTransformer.read(pom, "mainClass")
+                .orElseThrow(() -> new IOException(String.format("%s has no mainClass", pomFile)));
+        int dot = mainClass.lastIndexOf('.');
+        String packageName = mainClass.substring(0, Math.max(dot, 0));
+        String mainClassName = mainClass.substring(dot + 1);
+        String sourceRoot = String.join(Str.SLASH, SRC_MAIN_JAVA, packageName.replace(Str.DOT, Str.SLASH));
+
+        Set<String> declared = PomTransformer.dependencyGroupIds(pom);
+        List<Feature> added = new ArrayList<>();
+        for (Feature required : Features.resolve(List.of(feature))) {
+            if (!present(required, declared, app.resolve(sourceRoot)))
+                added.add(required);
+        }
+        if (added.isEmpty()) {
+            out.printf("%s already has %s%n", app, feature);
+            return 0;
+        }
+        for (Feature json : added) {
+            if (isJson(json) && Features.all().stream()
+                    .anyMatch(other -> isJson(other) && present(other, declared, app.resolve(sourceRoot))))
+                throw new CommandLine.ParameterException(spec.commandLine()
+                        , "the application has a json provider, switch it with regenerate --json");
+        }
+
+        StagedTree tree = patch(app, pom, packageName, mainClassName, sourceRoot, added);
+        String mainPath = String.format("%s/%s.java", sourceRoot, mainClassName);
+        List<String> writes = new ArrayList<>();
+        List<String> conflicts = new ArrayList<>();
+        for (String path : tree.paths()) {
+            Path file = app.resolve(path);
+            String current = Files.isRegularFile(file) ? Files.readString(file) : null;
+            String next = tree.readString(path);
+            if (next.equals(current))
+                continue;
+            // the pom and the main class are patched, any other existing file would be replaced
+            if (current != null && !path.equals(Create.POM) && !path.equals(mainPath))
+                conflicts.add(path);
+            writes.add(path);
+            if (dryRun)
+                out.print(LineDiff.unified(path, current, next));
+        }
+        out.flush();
+        if (!conflicts.isEmpty()) {
+            for (String path : conflicts)
+                out.printf("exists    %s%n", path);
+            out.printf("%s can not be added, these files are in the way%n", feature);
+            return 1;
+        }
+        if (dryRun)
+            return 0;
+
+        Path manifestFile = app.resolve(Manifest.PATH);
+        if (Files.isRegularFile(manifestFile)) {
+            // keep regenerate in step: the new options, and the new hashes of the patched files
+            Manifest manifest = Manifest.read(app);
+            for (Feature addition : added) {
+                if (isJson(addition))
+                    manifest.options().put("json", addition.name());
+                else if (FEATURE_OPTIONS.containsKey(addition.name()))
+                    manifest.options().put(FEATURE_OPTIONS.get(addition.name()), String.valueOf(true));
+            }
+            for (String path : writes)
+                manifest.files().put(path, tree.hash(path));
+            tree.writeString(Manifest.PATH, manifest.toString());
+            writes.add(Manifest.PATH);
+        }
+        tree.update(app, writes, List.of());
+        out.printf("added %s to %s%n", added.stream().map(Feature::name).collect(Collectors.joining(", ")), app);
+        return 0;
+    }
+
+    /**
+     * Stage the files the features change: the pom with their dependencies, their sources and the main class
+     * @return A tree with the files the features touch
+     */
+    protected StagedTree patch(Path app, String pom, String packageName, String mainClassName, String sourceRoot
+            , List<Feature> added) throws IOException, InterruptedException {
+        Create create = new Create();
+        create.template = template;
+        create.offline = offline;
+        create.remote = remote;
+        create.cwd = cwd;
+        create.packageName = packageName;
+        create.appName = mainClassName;
+        create.features = added;
+        Create.Template loaded = create.loadTemplate();
+
+        StagedTree tree = new StagedTree();
+        Set<String> groupIds = new HashSet<>();
+        added.forEach(addition -> groupIds.addAll(addition.groupIds()));
+        String dependencies = PomTransformer.dependencies(loaded.tree().readString(Create.POM), groupIds);
+        tree.writeString(Create.POM, dependencies.isEmpty()
+                ? pom
+                : new PomTransformer().addDependencies(dependencies).transform(pom));
+
+        String mainPath = String.format("%s/%s.java", sourceRoot, mainClassName);
+        StagedTree sources = loaded.tree().copy(entry -> {
+            String path = create.layout(entry);
+            return path == null || !path.startsWith(SRC_MAIN_JAVA + Str.SLASH) || path.equals(mainPath) ? null : path;
+        });
+        create.packageSources(sources, SRC_MAIN_JAVA);
+        for (String path : sources.paths())
+            tree.write(path, sources.read(path));
+        FeatureContext context = new FeatureContext(tree, packageName, sourceRoot, mainClassName);
+        for (Feature addition : added)
+            addition.contribute(context);
+
+        Path mainFile = app.resolve(mainPath);
+        if (Files.isRegularFile(mainFile)) {
+            MainClass main = new MainClass(Str.of(Files.readString(mainFile)), packageName, mainClassName);
+            for (Feature addition : added)
+                addition.mainClass(main);
+            tree.write(mainPath, main.getSource().getBytes());
+        }
+        return tree;
+    }
+
+    /**
+     * A feature is part of the application when the pom has one of its dependencies,
+     * or for features without dependencies, when its source package exists
+     */
+    static boolean present(Feature feature, Set<String> declared, Path sourceRoot) {
+        if (!feature.groupIds().isEmpty())
+            return feature.groupIds().stream().anyMatch(declared::contains);
+        return feature.sourcePackage() != null && Files.isDirectory(sourceRoot.resolve(feature.sourcePackage()));
+    }
+
+    static boolean isJson(Feature feature) {
+        return Arrays.stream(Create.Json.values()).anyMatch(json -> json.name().equals(feature.name()));
+    }
+}
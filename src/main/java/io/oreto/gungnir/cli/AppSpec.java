@@ -0,0 +1,80 @@
+package io.oreto.gungnir.cli;
+
+import io.oreto.gungnir.cli.util.JsonReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The selections for one application, as read from a batch manifest
+ * @param path The application path
+ * @param packageName The application package
+ * @param json The json provider
+ * @param database Add database support
+ * @param di Add dependency injection
+ * @param jte Add view renderer support
+ */
+record AppSpec(String path, String packageName, Create.Json json, boolean database, boolean di, boolean jte) {
+    static final String DEFAULT_PACKAGE = "example";
+
+    /**
+     * Read a batch manifest: a JSON array of app specs, or an object with an "apps" array.
+     * Each spec has a required "name" and optional "package", "json", "database", "di" and "jte".
+     * @param manifest The manifest file
+     * @return The app specs in manifest order
+     */
+    static List<AppSpec> read(Path manifest) throws IOException {
+        Object document = JsonReader.read(manifest);
+        if (document instanceof Map<?, ?> map)
+            document = map.get("apps");
+        if (!(document instanceof List<?> apps))
+            throw new IOException(String.format("%s must contain an array of apps", manifest));
+
+        List<AppSpec> specs = new ArrayList<>(apps.size());
+        for (int i = 0; i < apps.size(); i++) {
+            if (!(apps.get(i) instanceof Map<?, ?> app))
+                throw new IOException(String.format("%s: app %d is not an object", manifest, i + 1));
+            specs.add(of(app, String.format("%s: app %d", manifest, i + 1)));
+        }
+        return specs;
+    }
+
+    static AppSpec of(Map<?, ?> app, String location) throws IOException {
+        String name = string(app, "name", null, location);
+        if (name == null || name.isBlank())
+            throw new IOException(String.format("%s has no name", location));
+        String json = string(app, "json", Create.Json.gson.name(), location);
+        try {
+            return new AppSpec(name
+                    , string(app, "package", DEFAULT_PACKAGE, location)
+                    , Create.Json.valueOf(json)
+                    , bool(app, "database", location)
+                    , bool(app, "di", location)
+                    , bool(app, "jte", location));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(String.format("%s: unknown json provider %s", location, json));
+        }
+    }
+
+    private static String string(Map<?, ?> app, String key, String defaultValue, String location)
+            throws IOException {
+        Object value = app.get(key);
+        if (value == null)
+            return defaultValue;
+        if (value instanceof String s)
+            return s;
+        throw new IOException(String.format("%s: %s must be a string", location, key));
+    }
+
+    private static boolean bool(Map<?, ?> app, String key, String location) throws IOException {
+        Object value = app.get(key);
+        if (value == null)
+            return false;
+        if (value instanceof Boolean b)
+            return b;
+        throw new IOException(String.format("%s: %s must be true or false", location, key));
+    }
+}
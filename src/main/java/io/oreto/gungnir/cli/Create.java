@@ -3,39 +3,69 @@ package io.oreto.gungnir.cli;
 import io.oreto.gungnir.cli.prompt.option.OptionPrompt;
 import io.oreto.gungnir.cli.prompt.StringPrompt;
 import io.oreto.gungnir.cli.prompt.option.YesNo;
-import io.oreto.gungnir.cli.util.Coder;
-import io.oreto.gungnir.cli.util.FileUtils;
+import io.oreto.gungnir.cli.util.FileDeleter;
+import io.oreto.gungnir.cli.util.PackageRewriter;
+import io.oreto.gungnir.cli.util.PomTransformer;
 import io.oreto.gungnir.cli.util.Str;
+import io.oreto.gungnir.cli.util.TaskGraph;
+import io.oreto.gungnir.cli.util.Workers;
+import io.oreto.gungnir.cli.feature.Feature;
+import io.oreto.gungnir.cli.feature.FeatureContext;
+import io.oreto.gungnir.cli.feature.Features;
+import io.oreto.gungnir.cli.feature.MainClass;
+import io.oreto.gungnir.cli.template.DirectorySource;
+import io.oreto.gungnir.cli.template.EmbeddedTemplate;
+import io.oreto.gungnir.cli.template.StagedTree;
+import io.oreto.gungnir.cli.template.TemplateCache;
+import io.oreto.gungnir.cli.template.TemplatePlan;
+import io.oreto.gungnir.cli.template.TemplateSource;
 import io.oreto.gungnir.cli.vsc.Git;
-import org.joox.JOOX;
-import org.joox.Match;
-import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
 import picocli.CommandLine;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.stream.Stream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 
 import io.oreto.gungnir.cli.prompt.option.InputOption;
 
-import static org.joox.JOOX.*;
-
 @CommandLine.Command(name = "create", description = "Create new gungnir application")
 public class Create implements Callable<Integer> {
     final static String GUNGNIR_LAUNCH_APP_NAME = "gungnir-launch";
+    final static String GUNGNIR_LAUNCH = "GungnirLaunch";
+    final static String POM = "pom.xml";
+    final static String README = "README.md";
+
+    final static String FEATURE_STAGE = "feature:";
+    final static long PREFETCH_CANCEL_MILLIS = 2000;
+    final static int LOADED_TEMPLATES = 4;
+    final static int PACKAGE_BATCH = 32;
 
     final static String ASCII_LINE = "---------------------------------";
 
     final String[] SRC_MAIN_JAVA = new String[] { "src", "main", "java" };
-    final String[] SRC_MAIN_TMP = new String[] { "src", "main", "tmp" };
     final String[] SRC_TEST_JAVA = new String[] { "src", "test", "java" };
 
     enum Json implements InputOption {
@@ -52,10 +82,104 @@ public class Create implements Callable<Integer> {
         }
     }
 
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec;
+
     @CommandLine.Parameters(index = "0", defaultValue = "")
-    private String appPath;
+    String appPath;
+
+    String appName;
+
+    List<Feature> features;
+
+    private Prefetch prefetch;
 
-    private String appName;
+    private TemplatePlan plan;
+
+    private Parent parent;
+
+    /**
+     * A loaded template with its own layout
+     * @param tree The template files
+     * @param plan The edit points of the template
+     */
+    record Template(StagedTree tree, TemplatePlan plan) {
+    }
+
+    /**
+     * An application of a batch
+     * @param nanos How long it took to create
+     * @param result The totals of its commit
+     */
+    record Created(long nanos, StagedTree.FlushResult result) {
+    }
+
+    /**
+     * The coordinates of the parent project of a module
+     * @param groupId The parent groupId
+     * @param artifactId The parent artifactId
+     * @param version The parent version, modules inherit it
+     */
+    record Parent(String groupId, String artifactId, String version) {
+        /**
+         * @return The parent element of a module pom, as a {@link PomTransformer#insertAfter(String, String)} fragment
+         */
+        String fragment() {
+            return String.join("\n", ""
+                    , "<parent>"
+                    , String.format("    <groupId>%s</groupId>", groupId)
+                    , String.format("    <artifactId>%s</artifactId>", artifactId)
+                    , String.format("    <version>%s</version>", version)
+                    , "</parent>");
+        }
+    }
+
+    /**
+     * A template load on a background thread. A shutdown hook cancels it on ctrl-c and is removed
+     * as soon as the load completes or is cancelled, so it does not keep the command reachable.
+     */
+    private static class Prefetch extends FutureTask<Template> {
+        private final Thread thread;
+        private final Thread hook;
+
+        Prefetch(Callable<Template> load) {
+            super(load);
+            this.thread = new Thread(this, "gungnir-prefetch");
+            thread.setDaemon(true);
+            // ctrl-c while prompting, give the fetch a moment to kill git and remove its temporary files
+            this.hook = new Thread(() -> {
+                if (cancel(true)) {
+                    try {
+                        thread.join(PREFETCH_CANCEL_MILLIS);
+                    } catch (InterruptedException ignored) { }
+                }
+            });
+        }
+
+        void start() {
+            Runtime.getRuntime().addShutdownHook(hook);
+            thread.start();
+        }
+
+        @Override
+        protected void done() {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException ignored) {
+                // the process is already shutting down, the hook is running
+            }
+        }
+    }
+
+    /**
+     * Recently loaded versioned templates by plan file, a long running process loads each revision once
+     */
+    private static final Map<Path, Template> loaded = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Template> eldest) {
+            return size() > LOADED_TEMPLATES;
+        }
+    });
 
     @CommandLine.Option(names = "--package", description = "Specify application package")
     String packageName;
@@ -73,6 +197,57 @@ public class Create implements Callable<Integer> {
     @CommandLine.Option(names = "--jte", description = "Add view renderer support")
     Boolean jte;
 
+    @CommandLine.Option(names = "--template", description = "Template directory, git repository or zip/tar.gz archive")
+    String template;
+
+    @CommandLine.Option(names = "--link"
+            , description = "Hard link unmodified files from the read only template cache instead of copying them, "
+                    + "linked files stay read only. Other templates are always copied")
+    boolean link;
+
+    @CommandLine.Option(names = "--offline", description = "Only use the locally cached template")
+    boolean offline;
+
+    @CommandLine.Option(names = "--remote", description = "Use the latest template instead of the embedded one")
+    boolean remote;
+
+    @CommandLine.Option(names = "--refresh", description = "Check for a newer template even if the cache is fresh")
+    boolean refresh;
+
+    @CommandLine.Option(names = "--jobs", description = "Number of worker threads, defaults to the number of cores")
+    Integer jobs;
+
+    @CommandLine.Option(names = "--batch"
+            , description = "Create every application listed in a JSON manifest without prompting")
+    String batch;
+
+    @CommandLine.Option(names = "--modules", split = ","
+            , description = "Create a parent project with one module per name, every module gets the selected options")
+    List<String> modules;
+
+    @CommandLine.Option(names = { "-v", "--verbose" }, description = "Report the files and bytes written")
+    boolean verbose;
+
+    @CommandLine.Option(names = { "-y", "--yes" }
+            , description = "Use the defaults of unspecified options and overwrite without prompting")
+    boolean yes;
+
+    @CommandLine.Option(names = "--cwd", hidden = true, description = "Directory relative paths are resolved against")
+    Path cwd;
+
+    public Create() {
+    }
+
+    Create(AppSpec spec) {
+        this.appPath = spec.path();
+        this.appName = appName(spec.path());
+        this.packageName = spec.packageName();
+        this.json = spec.json();
+        this.database = spec.database();
+        this.di = spec.di();
+        this.jte = spec.jte();
+    }
+
     /**
      * Computes a result, or throws an exception if unable to do so.
      * @return computed result
@@ -80,15 +255,49 @@ public class Create implements Callable<Integer> {
      */
     @Override
     public Integer call() throws Exception {
+        Workers.Scope scope = workers();
+        try (scope) {
+            if (Str.isNotEmpty(batch))
+                return batch(path(batch));
+            if (modules != null) {
+                for (String module : modules) {
+                    if (!module.matches("[\\w.-]+") || module.startsWith("."))
+                        throw new CommandLine.ParameterException(spec.commandLine()
+                                , String.format("invalid module name %s", module));
+                }
+                if (modules.stream().distinct().count() < modules.size())
+                    throw new CommandLine.ParameterException(spec.commandLine(), "module names must be unique");
+            }
+            if (yes)
+                return accept();
+
+            // the template loads while the user answers the prompts
+            prefetch();
+            try {
+                return prompt();
+            } catch (Exception e) {
+                cancelPrefetch();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Give this invocation a worker pool of its own when --jobs is given
+     * @return The scope to close when the invocation is done, null to use the shared pool
+     */
+    protected Workers.Scope workers() {
+        if (jobs == null)
+            return null;
+        if (jobs < 1)
+            throw new CommandLine.ParameterException(spec.commandLine(), "--jobs must be at least 1");
+        return Workers.scope(jobs);
+    }
+
+    protected Integer prompt() throws Exception {
         if (Str.isEmpty(appPath))
             appPath = new StringPrompt("Enter application name").getInput();
-
-        if (appPath.contains("/"))
-            appName = appPath.substring(appPath.lastIndexOf('/') + 1);
-        else if (appPath.contains("\\"))
-            appName = appPath.substring(appPath.lastIndexOf('\\') + 1);
-        else
-            appName = appPath;
+        appName = appName(appPath);
 
         if (packageName == null)
             packageName = new StringPrompt("Enter the application package", "a.b.c")
@@ -113,177 +322,543 @@ public class Create implements Callable<Integer> {
         if (!confirm(appPath, packageName, json, database, di, jte)) {
             call();
         }
-        boolean created = create();
+        return report(create());
+    }
+
+    /**
+     * Create the application without prompting, unspecified options take their defaults
+     */
+    protected Integer accept() throws IOException, InterruptedException {
+        if (Str.isEmpty(appPath))
+            throw new CommandLine.ParameterException(spec.commandLine(), "an application name is required with --yes");
+        appName = appName(appPath);
+        if (packageName == null)
+            packageName = AppSpec.DEFAULT_PACKAGE;
+        if (json == null)
+            json = Json.gson;
+        database = Boolean.TRUE.equals(database);
+        di = Boolean.TRUE.equals(di);
+        jte = Boolean.TRUE.equals(jte);
+        return report(create());
+    }
+
+    protected int report(boolean created) {
         if (created) {
-            System.out.printf("%s%nCreated application %s%n", ASCII_LINE, appPath);
-            System.out.println(ASCII_LINE);
-            System.out.println("Next steps:");
-            System.out.printf("cd %s%n", appPath);
-            System.out.println("mvn compile exec:java");
+            PrintWriter out = out();
+            out.printf("%s%nCreated application %s%n", ASCII_LINE, appPath);
+            out.println(ASCII_LINE);
+            out.println("Next steps:");
+            out.printf("cd %s%n", appPath);
+            out.println(modules == null
+                    ? "mvn compile exec:java"
+                    : String.format("mvn -pl %s -am compile exec:java", modules.get(0)));
         }
         return created ? 0 : 1;
     }
 
+    /**
+     * @return Where output goes, the console unless the command line was given another writer
+     */
+    protected PrintWriter out() {
+        return spec.commandLine().getOut();
+    }
+
+    /**
+     * @param path A path given on the command line
+     * @return The path, resolved against --cwd when given
+     */
+    protected Path path(String path) {
+        return cwd == null ? Paths.get(path) : cwd.resolve(path);
+    }
+
+    static String appName(String appPath) {
+        if (appPath.contains("/"))
+            return appPath.substring(appPath.lastIndexOf('/') + 1);
+        else if (appPath.contains("\\"))
+            return appPath.substring(appPath.lastIndexOf('\\') + 1);
+        else
+            return appPath;
+    }
+
     protected boolean confirm(String appName
             , String packageName
             , Json json
             , boolean database
             , boolean di
             , boolean jte) {
-        System.out.printf("%s%n", ASCII_LINE);
-        System.out.println("Confirm Selections");
-        System.out.println(ASCII_LINE);
-        System.out.printf("application name: %s%n", appName);
-        System.out.printf("package name: %s%n", packageName);
-        System.out.printf("json provider: %s%n", json);
-        System.out.printf("jOOQ: %s%n", database);
-        System.out.printf("Guice: %s%n", di);
-        System.out.printf("Jte: %s%n", jte);
+        PrintWriter out = out();
+        out.printf("%s%n", ASCII_LINE);
+        out.println("Confirm Selections");
+        out.println(ASCII_LINE);
+        out.printf("application name: %s%n", appName);
+        out.printf("package name: %s%n", packageName);
+        out.printf("json provider: %s%n", json);
+        out.printf("jOOQ: %s%n", database);
+        out.printf("Guice: %s%n", di);
+        out.printf("Jte: %s%n", jte);
+        if (modules != null)
+            out.printf("modules: %s%n", String.join(", ", modules));
 
         return OptionPrompt.yesNo("Is this correct?").getInput() == YesNo.y;
     }
 
-    protected boolean create() throws IOException, InterruptedException, SAXException {
-        Path appPath = Paths.get(this.appPath);
-        if (Files.exists(appPath)) {
+    protected boolean create() throws IOException, InterruptedException {
+        Path appPath = path(this.appPath);
+        // an application replaced by an earlier run may still be waiting for deletion, finish it meanwhile
+        Path absolute = appPath.toAbsolutePath().normalize();
+        if (absolute.getParent() != null)
+            FileDeleter.sweep(absolute.getParent(), absolute.getFileName().toString());
+        if (Files.exists(appPath) && !yes) {
             boolean overwrite = OptionPrompt.yesNo(String.format("%s already exists, overwrite?", this.appPath))
                     .defaultTo(YesNo.n)
                     .getInput()
                     .toBoolean();
-            if (overwrite) {
-                FileUtils.deleteDirectory(appPath);
-            } else {
-                System.out.println("stopping");
+            if (!overwrite) {
+                cancelPrefetch();
+                out().println("stopping");
                 return false;
             }
         }
-        File appDir = Git.cloneGh(GUNGNIR_LAUNCH_APP_NAME + ".git", Paths.get(this.appPath));
-        // create app src package
-        List<String> srcJava = new ArrayList<>(List.of(SRC_MAIN_TMP));
-        List<String> packageList = List.of(packageName.split("\\."));
-        srcJava.addAll(packageList);
-        Path srcPath = Paths.get(this.appPath, srcJava.toArray(new String[0]));
-        Files.createDirectories(srcPath);
-
-        // build app according to specs
-        updatePom();
-        writeMainClass(srcPath);
-        updateReadme();
-        Path srcMainJava = Paths.get(this.appPath, SRC_MAIN_JAVA);
-        FileUtils.deleteDirectory(srcMainJava);
-        Files.move(Paths.get(this.appPath, SRC_MAIN_TMP), srcMainJava);
-        FileUtils.packageDirectory(srcMainJava);
-        FileUtils.deleteDirectory(Paths.get(this.appPath, ".git"));
+        // build the app in memory, then publish it in one atomic step
+        // an existing application is only replaced once the new one is complete
+        StagedTree.FlushResult result = generate().commit(appPath);
+        if (verbose)
+            out().println(describe(result));
+        return Files.exists(appPath);
+    }
+
+    /**
+     * @param result The totals of a commit
+     * @return The totals as a line of output
+     */
+    static String describe(StagedTree.FlushResult result) {
+        return String.format("%d files, %d bytes written, %d linked, %d unchanged"
+                , result.files(), result.bytes(), result.links(), result.unchanged());
+    }
+
+    /**
+     * Lay out the template loaded in the background and build the application in memory, with its manifest
+     * @return The staged application
+     */
+    protected StagedTree generate() throws IOException, InterruptedException {
+        Template template = template();
+        plan = template.plan();
+        StagedTree tree = modules == null
+                ? build(template.tree().copy(this::layout).link(link))
+                : reactor(template, moduleSpecs());
+        return manifest(tree);
+    }
+
+    /**
+     * Record the options and file hashes of a built application in its manifest
+     * @param tree The built application
+     * @return The tree
+     */
+    protected StagedTree manifest(StagedTree tree) throws IOException {
+        tree.writeString(Manifest.PATH, Manifest.of(options(), tree).toString());
+        return tree;
+    }
+
+    /**
+     * @return The selections this application is built with, by option name
+     */
+    protected Map<String, String> options() {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("name", appName);
+        options.put("package", packageName);
+        options.put("json", json.name());
+        options.put("database", String.valueOf(database));
+        options.put("di", String.valueOf(di));
+        options.put("jte", String.valueOf(jte));
+        if (modules != null)
+            options.put("modules", String.join(",", modules));
+        if (Str.isNotEmpty(template))
+            options.put("template", templateLocation());
+        if (remote)
+            options.put("remote", String.valueOf(true));
+        return options;
+    }
+
+    /**
+     * @return The --template location, local paths are resolved so they mean the same from anywhere
+     */
+    protected String templateLocation() {
+        // urls are taken as they are, paths are relative to the caller
+        boolean url = template.contains("://") || Git.isRemote(template);
+        return url ? template : path(template).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Start loading the template on a background thread, so prompts and template I/O overlap.
+     * The load is cancelled if the user aborts, interrupting a running git process.
+     */
+    protected synchronized void prefetch() {
+        if (prefetch != null)
+            return;
+        prefetch = new Prefetch(this::loadTemplate);
+        prefetch.start();
+    }
+
+    protected synchronized void cancelPrefetch() {
+        if (prefetch != null)
+            prefetch.cancel(true);
+    }
+
+    /**
+     * @return The template with its own layout, waits for the prefetch to finish if one was started
+     */
+    protected Template template() throws IOException, InterruptedException {
+        if (prefetch == null)
+            return loadTemplate();
+        try {
+            return prefetch.get();
+        } catch (ExecutionException e) {
+            Throwable cause = Workers.unwrap(e);
+            if (cause instanceof InterruptedException interrupted)
+                throw interrupted;
+            throw Workers.rethrow(cause);
+        }
+    }
+
+    /**
+     * @return The selected features, each one after the features it requires
+     */
+    protected List<Feature> features() {
+        if (features == null) {
+            List<String> names = new ArrayList<>();
+            names.add(json.name());
+            if (database)
+                names.add("jooq");
+            if (di)
+                names.add("guice");
+            if (jte)
+                names.add("jte");
+            features = Features.resolve(names);
+        }
+        return features;
+    }
+
+    /**
+     * Build the application according to specs
+     * @param tree The template, already laid out for this application
+     * @return The tree, ready to be committed
+     */
+    protected StagedTree build(StagedTree tree) throws IOException {
+        String packagePath = packageName.replace(Str.DOT, Str.SLASH);
+        String srcMainJava = String.join(Str.SLASH, SRC_MAIN_JAVA);
+        String sourceRoot = String.join(Str.SLASH, srcMainJava, packagePath);
+        tree.mkdirs(sourceRoot);
+
+        // stages declare what they read and write, independent stages run in parallel
+        FeatureContext context = new FeatureContext(tree, packageName, sourceRoot, Str.capitalize(appName));
+        String mainClass = String.format("%s/%s.java", sourceRoot, context.mainClassName());
+        TaskGraph graph = new TaskGraph();
+        graph.stage("pom", () -> updatePom(tree)).inputs(POM).outputs(POM);
+        graph.stage("readme", () -> updateReadme(tree)).inputs(README).outputs(README);
+        List<String> featureStages = new ArrayList<>();
+        for (Feature feature : features()) {
+            String stage = FEATURE_STAGE + feature.name();
+            graph.stage(stage, () -> feature.contribute(context))
+                    .outputs(feature.outputs().stream()
+                            .map(output -> String.join(Str.SLASH, sourceRoot, output))
+                            .toArray(String[]::new))
+                    .after(feature.requires().stream().map(FEATURE_STAGE::concat).collect(Collectors.toList()));
+            featureStages.add(stage);
+        }
+        // main class hooks expect every feature to be in place
+        graph.stage("main", () -> writeMainClass(tree)).inputs(mainClass).outputs(mainClass).after(featureStages);
+        graph.stage("packages", () -> packageSources(tree, srcMainJava)).inputs(srcMainJava).outputs(srcMainJava);
+        graph.run();
 
         // create app src test package
-        srcJava.clear();
-        srcJava.addAll(List.of(SRC_TEST_JAVA));
-        srcJava.addAll(packageList);
-        Files.createDirectories(Paths.get(this.appPath, srcJava.toArray(new String[0])));
-        return appDir.exists();
-    }
-
-    protected void updateReadme() throws IOException {
-        Path readme = Paths.get(appPath, "README.md");
-        Files.write(
-                readme
-                , Str.of(Files.readString(readme)).findAndReplace(GUNGNIR_LAUNCH_APP_NAME, Str.toKebab(appName)).getBytes()
-        );
-    }
-
-    protected void updatePom() throws IOException, SAXException {
-        File pomFile = Paths.get(appPath, "pom.xml").toFile();
-        Document document = JOOX.builder().parse(pomFile);
-        Match doc = $(document);
-        if (json == Json.gson) {
-            removeDependency(doc, "com.fasterxml.jackson.core");
+        tree.mkdirs(String.join(Str.SLASH, String.join(Str.SLASH, SRC_TEST_JAVA), packagePath));
+        return tree;
+    }
+
+    /**
+     * @return One app spec per module, each module gets a package of its own below the application package
+     */
+    protected List<AppSpec> moduleSpecs() {
+        List<AppSpec> specs = new ArrayList<>(modules.size());
+        for (String module : modules) {
+            String segment = module.toLowerCase().replaceAll("[^a-z0-9_]", "");
+            if (segment.isEmpty() || Character.isDigit(segment.charAt(0)))
+                segment = "m" + segment;
+            specs.add(new AppSpec(module, packageName + Str.DOT + segment, json, database, di, jte));
         }
-        if (!database) {
-            removeDependency(doc, "org.jooq");
+        return specs;
+    }
+
+    /**
+     * Build a parent project with one module per spec, all from the one loaded template.
+     * The parent manages the versions of every dependency a module uses, each module pom only keeps
+     * the dependencies of its own features, without versions.
+     * @param template The template with its own layout
+     * @param specs The modules
+     * @return The tree of the parent project, ready to be committed
+     */
+    protected StagedTree reactor(Template template, List<AppSpec> specs) throws IOException {
+        String templatePom = template.tree().readString(POM);
+        String version = PomTransformer.read(templatePom, "version")
+                .orElseThrow(() -> new IOException("the template pom has no version"));
+        Parent parent = new Parent(packageName, Str.toKebab(appName), version);
+
+        Set<Feature> used = new HashSet<>();
+        List<Workers.Task<StagedTree>> tasks = new ArrayList<>(specs.size());
+        StringBuilder fragment = new StringBuilder("<packaging>pom</packaging>\n\n<modules>\n");
+        for (AppSpec spec : specs) {
+            Create module = new Create(spec);
+            module.parent = parent;
+            module.plan = plan;
+            used.addAll(module.features());
+            tasks.add(() -> module.build(template.tree().copy(module::layout).link(link)));
+            fragment.append(String.format("    <module>%s</module>\n", spec.path()));
+        }
+        List<StagedTree> trees = Workers.all(tasks);
+
+        PomTransformer pom = new PomTransformer()
+                .groupId(parent.groupId())
+                .artifactId(parent.artifactId())
+                .insertAfter("version", fragment.append("</modules>").toString())
+                .removeElement("build")
+                .manageDependencies();
+        for (Feature feature : Features.all()) {
+            if (!used.contains(feature))
+                feature.groupIds().forEach(pom::removeDependencies);
         }
-        if (!di) {
-            removeDependency(doc, "com.google.inject");
+        StagedTree tree = new StagedTree().link(link);
+        tree.writeString(POM, pom.transform(templatePom));
+        for (int i = 0; i < specs.size(); i++)
+            tree.include(specs.get(i).path(), trees.get(i));
+        return tree;
+    }
+
+    /**
+     * Create every application of a manifest from one template load, concurrently on the worker pool.
+     * Existing applications are not overwritten.
+     * @param manifest The batch manifest, see {@link AppSpec#read(Path)}
+     * @return 0 if every application was created, 1 otherwise
+     */
+    protected int batch(Path manifest) throws IOException, InterruptedException {
+        List<AppSpec> specs = AppSpec.read(manifest);
+        long start = System.nanoTime();
+        Template template = loadTemplate();
+
+        List<CompletableFuture<Created>> futures = new ArrayList<>(specs.size());
+        for (AppSpec spec : specs) {
+            futures.add(Workers.submit(() -> {
+                long appStart = System.nanoTime();
+                Path appPath = path(spec.path());
+                if (Files.exists(appPath))
+                    throw new FileAlreadyExistsException(spec.path(), null, "already exists");
+                Create app = new Create(spec);
+                app.plan = template.plan();
+                app.template = this.template;
+                app.remote = remote;
+                app.cwd = cwd;
+                StagedTree.FlushResult result = app.manifest(app.build(template.tree().copy(app::layout).link(link)))
+                        .commit(appPath);
+                return new Created(System.nanoTime() - appStart, result);
+            }));
         }
-        if (!jte) {
-            removeDependency(doc, "gg.jte");
+
+        int created = 0;
+        long files = 0;
+        long bytes = 0;
+        PrintWriter out = out();
+        out.println(ASCII_LINE);
+        for (int i = 0; i < specs.size(); i++) {
+            try {
+                Created app = futures.get(i).join();
+                created++;
+                files += app.result().files();
+                bytes += app.result().bytes();
+                out.printf("ok      %s (%d ms)%n", specs.get(i).path(), TimeUnit.NANOSECONDS.toMillis(app.nanos()));
+                if (verbose)
+                    out.printf("        %s%n", describe(app.result()));
+            } catch (CompletionException | CancellationException e) {
+                Throwable cause = Workers.unwrap(e);
+                String reason = cause instanceof FileSystemException fs && fs.getReason() != null
+                        ? fs.getReason()
+                        : cause.getMessage();
+                out.printf("FAILED  %s: %s%n", specs.get(i).path(), reason);
+            }
         }
-        updateAppDetails(doc);
-        doc.write(pomFile);
+        long elapsed = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        out.println(ASCII_LINE);
+        out.printf("Created %d of %d applications in %d ms (%.1f apps/s), %d files, %d bytes written%n"
+                , created, specs.size(), elapsed, created * 1000.0 / elapsed, files, bytes);
+        return created == specs.size() ? 0 : 1;
     }
 
-    protected void removeDependency(Match doc, String groupId) {
-        Match test = doc.find(selector("dependency"))
-                .find(tag("groupId"))
-                .filter(matchText(groupId.replaceAll("\\.", "\\\\" + ".")));
-        if (test.size() == 1)
-            test.parent().remove();
+    /**
+     * Load the template with its own layout, along with its plan.
+     * Plans of versioned templates are saved next to the template cache, others are compiled on every load.
+     * Versioned templates are also kept in memory, so later loads of the same revision in this process are free.
+     * @return The template
+     */
+    protected Template loadTemplate() throws IOException, InterruptedException {
+        TemplateCache cache = new TemplateCache(GUNGNIR_LAUNCH_APP_NAME).offline(offline).refresh(refresh);
+        TemplateSource source;
+        Path planFile = null;
+        Optional<EmbeddedTemplate> embedded = remote || Str.isNotEmpty(template)
+                ? Optional.empty()
+                : EmbeddedTemplate.find(GUNGNIR_LAUNCH_APP_NAME);
+        if (Str.isNotEmpty(template)) {
+            source = TemplateSource.of(templateLocation());
+        } else if (embedded.isPresent()) {
+            source = embedded.get();
+            planFile = source.revision().map(cache::planFile).orElse(null);
+        } else {
+            Path snapshot = cache.resolve();
+            source = new DirectorySource(snapshot).readOnly(true);
+            planFile = cache.planFile(snapshot.getFileName().toString());
+        }
+        Template memo = planFile == null ? null : loaded.get(planFile);
+        if (memo != null)
+            return memo;
+        StagedTree tree = StagedTree.load(source, UnaryOperator.identity());
+
+        Optional<TemplatePlan> saved = planFile == null ? Optional.empty() : TemplatePlan.read(planFile);
+        TemplatePlan plan = saved.isPresent()
+                ? saved.get()
+                : TemplatePlan.compile(tree, GUNGNIR_LAUNCH, GUNGNIR_LAUNCH_APP_NAME, README);
+        if (planFile != null && saved.isEmpty()) {
+            try {
+                plan.write(planFile);
+            } catch (IOException ignored) {
+                // a read only cache only means the plan is compiled again next time
+            }
+        }
+        Template result = new Template(tree, plan);
+        if (planFile != null)
+            loaded.put(planFile, result);
+        return result;
+    }
+
+    /**
+     * Decide where a template entry goes in the application.
+     * Sources are only kept for the main class and selected features, relocated into the application package.
+     * @param entry The template entry path
+     * @return The application path, null to skip the entry
+     */
+    protected String layout(String entry) {
+        String srcMainJava = String.join(Str.SLASH, SRC_MAIN_JAVA) + Str.SLASH;
+        if (!entry.startsWith(srcMainJava))
+            return entry;
+
+        String packagePath = packageName.replace(Str.DOT, Str.SLASH);
+        String[] segments = entry.substring(srcMainJava.length()).split(Str.SLASH);
+        String fileName = segments[segments.length - 1];
+        if (fileName.startsWith(GUNGNIR_LAUNCH + Str.DOT))
+            return String.format("%s%s/%s.java", srcMainJava, packagePath, Str.capitalize(appName));
+        Set<String> sourcePackages = features().stream()
+                .map(Feature::sourcePackage)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        for (int i = 0; i < segments.length - 1; i++) {
+            if (sourcePackages.contains(segments[i]))
+                return String.format("%s%s/%s", srcMainJava, packagePath
+                        , String.join(Str.SLASH, Arrays.copyOfRange(segments, i, segments.length)));
+        }
+        return null;
     }
 
-    protected void updateAppDetails(Match doc) {
-        doc.child(tag("groupId")).text(packageName);
-        doc.child(tag("artifactId")).text(Str.toKebab(appName));
-        doc.find(selector("mainClass")).text(String.format("%s.%s", packageName, Str.capitalize(appName)));
+    protected void updateReadme(StagedTree tree) throws IOException {
+        String readme = tree.readString(README);
+        Optional<TemplatePlan.FilePlan> planned = plan == null ? Optional.empty() : plan.file(README, readme);
+        Str str = planned
+                .map(file -> Str.of(TemplatePlan.render(readme, file
+                        , Map.of(TemplatePlan.Kind.APP_NAME, Str.toKebab(appName))).text()))
+                .orElseGet(() -> Str.of(readme).findAndReplace(GUNGNIR_LAUNCH_APP_NAME, Str.toKebab(appName)));
+        tree.write(README, str.getBytes());
     }
 
-    protected void writeMainClass(Path srcPath) throws IOException {
-        final String GUNGNIR_LAUNCH = "GungnirLaunch";
-        Optional<Path> mainClass;
-        try(Stream<Path> stream = Files.walk(Paths.get(this.appPath, SRC_MAIN_JAVA))) {
-            mainClass = stream
-                    .filter(path -> path.getFileName().toString().startsWith(GUNGNIR_LAUNCH + "."))
-                    .findFirst();
+    protected void updatePom(StagedTree tree) throws IOException {
+        PomTransformer pom = new PomTransformer();
+        List<Feature> selected = features();
+        for (Feature feature : Features.all()) {
+            if (!selected.contains(feature))
+                feature.groupIds().forEach(pom::removeDependencies);
         }
-        if (mainClass.isPresent()) {
-           Str str = Str.of(Files.readString(mainClass.get()));
-           String mainClassName = Str.capitalize(appName);
-           str.replaceFrom("public class ", "extends", false
-                   , "public class ", mainClassName, Str.SPACE)
-                   .replace(GUNGNIR_LAUNCH, mainClassName);
-
-            if (json == Json.gson) {
-                Str tab = Str.of();
-                Optional<Integer> index = str.indexOf('{');
-                if (index.isPresent()) {
-                    for (int i = index.get() + 1; i < str.length(); i++) {
-                        char c = str.charAt(i);
-                        if (c == '\n' || c == '\r')
-                            tab.delete();
-                        else if (Character.isWhitespace(c))
-                            tab.add(c);
-                        else
-                            break;
-                    }
-                }
-                writeGsonMapper(str, tab.length());
-                FileUtils.copyDirectory(Paths.get(mainClass.get().getParent().toString(), Json.gson.name())
-                        , Paths.get(srcPath.toString(), Json.gson.name()));
+        updateAppDetails(pom);
+        if (parent != null) {
+            // version, properties and dependency versions come from the parent
+            pom.insertAfter("modelVersion", parent.fragment())
+                    .removeElement("version")
+                    .removeElement("properties")
+                    .removeDependencyVersions();
+        }
+        tree.write(POM, pom.transform(tree.read(POM)));
+    }
+
+    protected void updateAppDetails(PomTransformer pom) {
+        pom.groupId(packageName)
+                .artifactId(Str.toKebab(appName))
+                .mainClass(String.format("%s.%s", packageName, Str.capitalize(appName)));
+    }
+
+    protected void writeMainClass(StagedTree tree) throws IOException {
+        String mainClassName = Str.capitalize(appName);
+        String mainClass = String.format("%s/%s/%s.java"
+                , String.join(Str.SLASH, SRC_MAIN_JAVA), packageName.replace(Str.DOT, Str.SLASH), mainClassName);
+        if (tree.exists(mainClass)) {
+            String source = tree.readString(mainClass);
+            Optional<TemplatePlan.FilePlan> planned = plan == null || plan.getMainClass() == null
+                    || !mainClass.equals(layout(plan.getMainClass()))
+                    ? Optional.empty()
+                    : plan.file(plan.getMainClass(), source);
+            MainClass main;
+            if (planned.isPresent()) {
+                // substitute into the planned spans, no search through the source
+                TemplatePlan.Rendered rendered = TemplatePlan.render(source, planned.get(), Map.of(
+                        TemplatePlan.Kind.CLASS_HEADER, String.join("", "public class ", mainClassName, Str.SPACE)
+                        , TemplatePlan.Kind.LAUNCH_NAME, mainClassName));
+                main = new MainClass(Str.of(rendered.text()), packageName, mainClassName
+                        , rendered.positions().get(TemplatePlan.Kind.CLASS_CLOSE)
+                        , rendered.positions().get(TemplatePlan.Kind.FIRST_IMPORT)
+                        , planned.get().first(TemplatePlan.Kind.MEMBER_INDENT)
+                                .map(indent -> indent.end() - indent.start())
+                                .orElse(0));
+            } else {
+                Str str = Str.of(source);
+                str.replaceFrom("public class ", "extends", false
+                        , "public class ", mainClassName, Str.SPACE)
+                        .replace(GUNGNIR_LAUNCH, mainClassName);
+                main = new MainClass(str, packageName, mainClassName);
             }
-            Files.write(Paths.get(srcPath.toString(), String.format("%s.java", mainClassName)), str.getBytes());
+            for (Feature feature : features())
+                feature.mainClass(main);
+            tree.write(mainClass, main.getSource().getBytes());
         }
     }
 
-    protected void writeGsonMapper(Str str, int indentSize) {
-        final String GSON_MAPPER = "GsonMapper";
-        Optional<Integer> classClose = str.lastIndexOf('}');
-        if (classClose.isPresent()) {
-            int i = classClose.get() - 1;
-            str.insert(i, "\n", "\n");
-            i += 2;
-            Coder coder = new Coder(indentSize);
-            coder.setIndentationLevel(1);
-            Coder.Method method = coder.method("jsonMapper", "JsonMapper")
-                    .modifiers(Coder.Modifiers.PROTECTED)
-                    .annotate(new Coder.Annotation("Override"));
-            method.getBody().statement("return ", GSON_MAPPER + ".mapper");
-            str.replaceFrom(i, i, true, method.toString());
-
-            str.insert(str.indexOf("import ").orElse(-1) - 1
-                    , "import io.javalin.json.JsonMapper;"
-                    , "\n"
-                    , String.format("import %s.%s.%s;"
-                            , packageName
-                            , Json.gson.name()
-                            , GSON_MAPPER));
+    /**
+     * Make the package declaration of every staged source match its directory, in parallel batches
+     * @param tree The staged application
+     * @param srcRoot The source root, such as src/main/java
+     */
+    protected void packageSources(StagedTree tree, String srcRoot) throws IOException {
+        List<String> sources = new ArrayList<>();
+        for (String path : tree.paths(srcRoot)) {
+            int slash = path.lastIndexOf('/');
+            if (path.endsWith(".java") && slash > srcRoot.length())
+                sources.add(path);
+        }
+        List<Workers.Task<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i += PACKAGE_BATCH) {
+            List<String> batch = sources.subList(i, Math.min(i + PACKAGE_BATCH, sources.size()));
+            tasks.add(() -> {
+                for (String path : batch) {
+                    String pkg = path.substring(srcRoot.length() + 1, path.lastIndexOf('/')).replace('/', '.');
+                    byte[] content = tree.read(path);
+                    byte[] rewritten = PackageRewriter.rewrite(content, pkg);
+                    if (rewritten != content)
+                        tree.write(path, rewritten);
+                }
+                return null;
+            });
         }
+        Workers.all(tasks);
     }
 }
@@ -0,0 +1,370 @@
+package io.oreto.gungnir.cli;
+
+import io.oreto.gungnir.cli.template.TemplateCache;
+import io.oreto.gungnir.cli.util.FileDeleter;
+import io.oreto.gungnir.cli.util.Str;
+import picocli.CommandLine;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a warm process which serves create requests on a local unix domain socket.
+ * Class loading, the picocli model, loaded templates and their plans stay in memory between requests.
+ * {@link GungnirCli#main(String[])} forwards non-interactive create invocations to a running daemon
+ * and runs them in process when there is none.
+ * <p>
+ * A request is the command ("run" or "stop"), the caller's working directory and the arguments.
+ * The response is a sequence of frames: a type byte, then for output frames a length and the bytes,
+ * for the final exit frame the exit code.
+ */
+@CommandLine.Command(name = "daemon", description = "Serve create requests from a warm process on a local socket")
+public class Daemon implements Callable<Integer> {
+    static final String SOCKET_ENV = "GUNGNIR_SOCKET";
+    static final String NO_DAEMON_ENV = "GUNGNIR_NO_DAEMON";
+    static final String SOCKET_FILE = "daemon.sock";
+    static final String RUN = "run";
+    static final String STOP = "stop";
+    static final byte EXIT = 0;
+    static final byte OUT = 1;
+    static final byte ERR = 2;
+    static final long WATCH_MILLIS = 10_000;
+    static final String OWNER_DIRECTORY = "rwx------";
+    static final String OWNER_SOCKET = "rw-------";
+
+    /**
+     * @return The socket the daemon listens on: GUNGNIR_SOCKET, otherwise daemon.sock in the user cache directory
+     */
+    static Path socketPath() {
+        String override = System.getenv(SOCKET_ENV);
+        return Str.isNotEmpty(override)
+                ? Paths.get(override)
+                : TemplateCache.userCacheDir().resolve(SOCKET_FILE);
+    }
+
+    /**
+     * Only invocations which never prompt are served, the daemon has no terminal to ask on
+     * @param args The command line arguments
+     * @return True if the invocation can run in the daemon
+     */
+    static boolean forwardable(String[] args) {
+        if (args.length > 0 && (args[0].equals("regenerate") || args[0].equals("add")))
+            return true;
+        if (args.length == 0 || !args[0].equals("create"))
+            return false;
+        for (int i = 1; i < args.length && !args[i].equals("--"); i++) {
+            String arg = args[i];
+            if (arg.equals("-y") || arg.equals("--yes") || arg.equals("--batch") || arg.startsWith("--batch="))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Run an invocation in a running daemon, relaying its output to this process
+     * @param args The command line arguments
+     * @return The exit code, OptionalInt.empty if the invocation has to run in process
+     */
+    static OptionalInt forward(String[] args) {
+        if (Str.isNotEmpty(System.getenv(NO_DAEMON_ENV)) || !forwardable(args))
+            return OptionalInt.empty();
+        Path socket = socketPath();
+        if (!Files.exists(socket))
+            return OptionalInt.empty();
+
+        SocketChannel channel;
+        DataInputStream in;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+            DataOutputStream out = output(channel);
+            out.writeUTF(RUN);
+            out.writeUTF(Paths.get("").toAbsolutePath().toString());
+            out.writeInt(args.length);
+            for (String arg : args)
+                out.writeUTF(arg);
+            out.flush();
+            in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        } catch (IOException e) {
+            // a stale socket or a request the protocol can not carry, nothing has run yet
+            return OptionalInt.empty();
+        }
+
+        try (channel) {
+            return OptionalInt.of(relay(in));
+        } catch (IOException e) {
+            System.err.printf("lost connection to the gungnir daemon: %s%n", e.getMessage());
+            return OptionalInt.of(1);
+        }
+    }
+
+    private static int relay(DataInputStream in) throws IOException {
+        while (true) {
+            byte type = in.readByte();
+            if (type == EXIT)
+                return in.readInt();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            PrintStream stream = type == ERR ? System.err : System.out;
+            stream.write(data);
+            stream.flush();
+        }
+    }
+
+    private static DataOutputStream output(SocketChannel channel) {
+        return new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * Sends whatever is written to it as frames of one type, frames of both streams share the connection
+     */
+    private static final class FrameStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte type;
+
+        FrameStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(len);
+                out.write(b, off, len);
+                out.flush();
+            }
+        }
+    }
+
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec;
+
+    @CommandLine.Option(names = "--socket"
+            , description = "Socket path, defaults to daemon.sock in the gungnir cache directory")
+    Path socket;
+
+    @CommandLine.Option(names = "--idle-timeout", defaultValue = "30"
+            , description = "Minutes without requests before the daemon exits, 0 to never exit")
+    long idleTimeout;
+
+    @CommandLine.Option(names = "--stop", description = "Stop the running daemon")
+    boolean stop;
+
+    private ServerSocketChannel server;
+    private final Set<Thread> requests = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile long idleSince;
+
+    /**
+     * Computes a result, or throws an exception if unable to do so.
+     * @return computed result
+     * @throws Exception if unable to compute a result
+     */
+    @Override
+    public Integer call() throws Exception {
+        Path socket = this.socket == null ? socketPath() : this.socket.toAbsolutePath();
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socket);
+        PrintWriter out = spec.commandLine().getOut();
+        if (stop)
+            return stop(address, out);
+
+        if (Files.exists(socket)) {
+            try {
+                SocketChannel.open(address).close();
+                spec.commandLine().getErr().printf("a daemon is already listening on %s%n", socket);
+                return 1;
+            } catch (IOException e) {
+                // left behind by a daemon which did not shut down
+                Files.deleteIfExists(socket);
+            }
+        }
+        try {
+            bind(socket);
+        } catch (UnsupportedOperationException e) {
+            close(socket);
+            spec.commandLine().getErr().printf("cannot restrict %s to its owner, the daemon needs posix permissions%n", socket);
+            return 1;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> close(socket)));
+        out.printf("gungnir daemon listening on %s%n", socket);
+        warm();
+        watch();
+
+        try {
+            while (true) {
+                SocketChannel channel = server.accept();
+                active.incrementAndGet();
+                Thread thread = new Thread(() -> serve(channel), "gungnir-request");
+                requests.add(thread);
+                thread.start();
+            }
+        } catch (ClosedChannelException e) {
+            // stopped, let requests in flight finish
+        } finally {
+            close(socket);
+        }
+        for (Thread thread : requests)
+            thread.join();
+        out.println("gungnir daemon stopped");
+        return 0;
+    }
+
+    /**
+     * Requests run as the user who started the daemon, nobody else may send them.
+     * The socket is bound inside a directory only the owner can enter and restricted to the owner
+     * before it is moved to its path, so it is never reachable with the permissions of the umask.
+     * @param socket The path to listen on
+     * @throws UnsupportedOperationException If the file system has no posix permissions
+     */
+    private void bind(Path socket) throws IOException {
+        Path parent = socket.getParent();
+        Files.createDirectories(parent, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(OWNER_DIRECTORY)));
+        Path directory = Files.createTempDirectory(parent, ".daemon-"
+                , PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(OWNER_DIRECTORY)));
+        try {
+            Path bound = directory.resolve(SOCKET_FILE);
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(bound));
+            Files.setPosixFilePermissions(bound, PosixFilePermissions.fromString(OWNER_SOCKET));
+            Files.move(bound, socket, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            FileDeleter.delete(directory);
+        }
+    }
+
+    private int stop(UnixDomainSocketAddress address, PrintWriter out) throws IOException {
+        if (!Files.exists(address.getPath())) {
+            out.println("no daemon is running");
+            return 1;
+        }
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            DataOutputStream request = output(channel);
+            request.writeUTF(STOP);
+            request.flush();
+            relay(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel))));
+        }
+        out.println("stopping daemon");
+        return 0;
+    }
+
+    /**
+     * Load the default template ahead of the first request, a failure is left for that request to report
+     */
+    private void warm() {
+        Thread thread = new Thread(() -> {
+            try {
+                Create create = new Create();
+                create.offline = true;
+                create.loadTemplate();
+            } catch (Exception ignored) {
+            }
+        }, "gungnir-warm");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop once no request has been served for the idle timeout
+     */
+    private void watch() {
+        if (idleTimeout <= 0)
+            return;
+        long timeout = TimeUnit.MINUTES.toMillis(idleTimeout);
+        idleSince = System.currentTimeMillis();
+        Thread thread = new Thread(() -> {
+            try {
+                while (server.isOpen()) {
+                    Thread.sleep(Math.min(timeout, WATCH_MILLIS));
+                    if (active.get() == 0 && System.currentTimeMillis() - idleSince >= timeout)
+                        server.close();
+                }
+            } catch (InterruptedException | IOException ignored) {
+            }
+        }, "gungnir-idle");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = output(channel);
+            if (in.readUTF().equals(STOP)) {
+                exit(out, 0);
+                server.close();
+                return;
+            }
+            String cwd = in.readUTF();
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++)
+                args[i] = in.readUTF();
+
+            PrintWriter stdout = writer(out, OUT);
+            PrintWriter stderr = writer(out, ERR);
+            int exitCode;
+            if (forwardable(args)) {
+                List<String> request = new ArrayList<>(List.of(args));
+                request.addAll(1, List.of("--cwd", cwd));
+                exitCode = new CommandLine(new GungnirCli())
+                        .setOut(stdout)
+                        .setErr(stderr)
+                        .execute(request.toArray(String[]::new));
+            } else {
+                stderr.println("the daemon only serves add, regenerate and create with --yes or --batch");
+                exitCode = 2;
+            }
+            stdout.flush();
+            stderr.flush();
+            exit(out, exitCode);
+        } catch (IOException e) {
+            // the client went away, whatever it asked for has still been done
+        } finally {
+            idleSince = System.currentTimeMillis();
+            active.decrementAndGet();
+            requests.remove(Thread.currentThread());
+        }
+    }
+
+    private static PrintWriter writer(DataOutputStream out, byte type) {
+        return new PrintWriter(new OutputStreamWriter(new FrameStream(out, type), StandardCharsets.UTF_8), true);
+    }
+
+    private static void exit(DataOutputStream out, int exitCode) throws IOException {
+        synchronized (out) {
+            out.writeByte(EXIT);
+            out.writeInt(exitCode);
+            out.flush();
+        }
+    }
+
+    private synchronized void close(Path socket) {
+        try {
+            if (server != null)
+                server.close();
+            Files.deleteIfExists(socket);
+        } catch (IOException ignored) {
+        }
+    }
+}
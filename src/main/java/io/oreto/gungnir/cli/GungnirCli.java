@@ -2,12 +2,18 @@ package io.oreto.gungnir.cli;
 
 import picocli.CommandLine;
 import java.io.IOException;
+import java.util.OptionalInt;
 import java.util.concurrent.Callable;
 
-@CommandLine.Command(name = "gungnir", subcommands = Create.class)
+@CommandLine.Command(name = "gungnir", subcommands = { Create.class, Regenerate.class, Add.class, Daemon.class })
 public class GungnirCli implements Callable<Integer> {
     public static void main(String[] args) throws IOException {
-        int exitCode = new CommandLine(new GungnirCli()).execute(args);
+        // a running daemon skips the startup cost, anything it can not serve runs here
+        OptionalInt forwarded = Daemon.forward(args);
+        int exitCode = forwarded.isPresent()
+                ? forwarded.getAsInt()
+                : new CommandLine(new GungnirCli()).execute(args);
+        // background deletions are not waited for, a later run sweeps what they leave behind
         System.exit(exitCode);
     }
 
@@ -0,0 +1,84 @@
+package io.oreto.gungnir.cli;
+
+import io.oreto.gungnir.cli.template.StagedTree;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What an application was generated from: the create options and the SHA-256 of every generated file.
+ * It is kept in the application as .gungnir/manifest, so a later run can tell which outputs changed
+ * and which files were modified since they were generated.
+ * @param options The create options by name
+ * @param files The hex SHA-256 of each generated file by path
+ */
+record Manifest(Map<String, String> options, Map<String, String> files) {
+    static final String PATH = ".gungnir/manifest";
+    static final String HEADER = "gungnir-manifest 1";
+    static final String OPTION = "option";
+    static final String FILE = "file";
+
+    /**
+     * Describe a staged application
+     * @param options The create options by name
+     * @param tree The staged application, the manifest itself is not listed
+     * @return The manifest
+     */
+    static Manifest of(Map<String, String> options, StagedTree tree) throws IOException {
+        Map<String, String> files = new LinkedHashMap<>();
+        for (String path : tree.paths()) {
+            if (!path.equals(PATH))
+                files.put(path, tree.hash(path));
+        }
+        return new Manifest(options, files);
+    }
+
+    /**
+     * Read the manifest of an application
+     * @param app The application directory
+     * @return The manifest
+     */
+    static Manifest read(Path app) throws IOException {
+        Path file = app.resolve(PATH);
+        if (!Files.isRegularFile(file))
+            throw new NoSuchFileException(file.toString(), null, "not an application generated by gungnir create");
+        return parse(Files.readString(file), file.toString());
+    }
+
+    static Manifest parse(String text, String location) throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        Map<String, String> files = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            if (!HEADER.equals(reader.readLine()))
+                throw new IOException(String.format("%s: unsupported manifest version", location));
+            int number = 1;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                number++;
+                // kind <tab> key <tab> value, the path goes last since it is the only field which may contain tabs
+                String[] fields = line.split("\t", 3);
+                if (fields.length != 3)
+                    throw new IOException(String.format("%s: invalid line %d", location, number));
+                switch (fields[0]) {
+                    case OPTION -> options.put(fields[1], fields[2]);
+                    case FILE -> files.put(fields[2], fields[1]);
+                    default -> throw new IOException(String.format("%s: invalid line %d", location, number));
+                }
+            }
+        }
+        return new Manifest(options, files);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(HEADER).append('\n');
+        options.forEach((name, value) -> sb.append(OPTION).append('\t').append(name).append('\t').append(value).append('\n'));
+        files.forEach((path, hash) -> sb.append(FILE).append('\t').append(hash).append('\t').append(path).append('\n'));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,158 @@
+package io.oreto.gungnir.cli;
+
+import io.oreto.gungnir.cli.template.StagedTree;
+import io.oreto.gungnir.cli.util.Str;
+import io.oreto.gungnir.cli.util.Workers;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Build an application again after its options changed and update it in place.
+ * Options which are not given keep the values recorded in the manifest. Only outputs whose content changed
+ * are written or deleted, files modified since they were generated are never overwritten unless forced.
+ */
+@CommandLine.Command(name = "regenerate"
+        , description = "Update a created application to changed options, keeping files modified since")
+public class Regenerate extends Create {
+    @CommandLine.Option(names = "--force", description = "Overwrite or delete files modified since they were generated")
+    boolean force;
+
+    @CommandLine.Option(names = "--dry-run", description = "Only list the files which would change")
+    boolean dryRun;
+
+    /**
+     * The changes regenerating makes
+     */
+    record Changes(List<String> writes, List<String> deletes, List<String> conflicts, int unchanged) {
+    }
+
+    /**
+     * Computes a result, or throws an exception if unable to do so.
+     * @return computed result
+     * @throws Exception if unable to compute a result
+     */
+    @Override
+    public Integer call() throws Exception {
+        Workers.Scope scope = workers();
+        try (scope) {
+            if (Str.isNotEmpty(batch))
+                throw new CommandLine.ParameterException(spec.commandLine(), "--batch can not be regenerated");
+            Path app = path(Str.isEmpty(appPath) ? "." : appPath);
+            Manifest previous = Manifest.read(app);
+            recorded(previous.options(), app);
+
+            StagedTree tree = generate();
+            Manifest next = Manifest.parse(tree.readString(Manifest.PATH), Manifest.PATH);
+            Changes changes = changes(app, previous, next);
+
+            PrintWriter out = out();
+            if (!changes.conflicts().isEmpty() && !force) {
+                for (String path : changes.conflicts())
+                    out.printf("modified  %s%n", path);
+                out.println("these files were modified since they were generated, nothing was changed");
+                out.println("--force overwrites them");
+                return 1;
+            }
+            for (String path : changes.writes())
+                out.printf("%s %s%n", Files.exists(app.resolve(path)) ? "update   " : "add      ", path);
+            for (String path : changes.deletes())
+                out.printf("delete    %s%n", path);
+            if (dryRun)
+                return 0;
+
+            List<String> writes = new ArrayList<>(changes.writes());
+            writes.add(Manifest.PATH);
+            tree.update(app, writes, changes.deletes());
+            out.printf("%d written, %d deleted, %d unchanged%n"
+                    , changes.writes().size(), changes.deletes().size(), changes.unchanged());
+            return 0;
+        }
+    }
+
+    /**
+     * Take the recorded value of every option which was not given
+     * @param options The options recorded in the manifest
+     * @param app The application directory
+     */
+    protected void recorded(Map<String, String> options, Path app) {
+        appName = options.getOrDefault("name", String.valueOf(app.toAbsolutePath().normalize().getFileName()));
+        if (packageName == null)
+            packageName = options.getOrDefault("package", AppSpec.DEFAULT_PACKAGE);
+        try {
+            if (json == null)
+                json = Json.valueOf(options.getOrDefault("json", Json.gson.name()));
+        } catch (IllegalArgumentException e) {
+            throw new CommandLine.ParameterException(spec.commandLine()
+                    , String.format("unknown json provider %s in the manifest", options.get("json")));
+        }
+        if (database == null)
+            database = Boolean.parseBoolean(options.get("database"));
+        if (di == null)
+            di = Boolean.parseBoolean(options.get("di"));
+        if (jte == null)
+            jte = Boolean.parseBoolean(options.get("jte"));
+        if (modules == null && options.containsKey("modules"))
+            modules = List.of(options.get("modules").split(","));
+        if (Str.isEmpty(template))
+            template = options.get("template");
+        if (!remote)
+            remote = Boolean.parseBoolean(options.get("remote"));
+    }
+
+    /**
+     * Compare the new outputs with the previous ones and with the files on disk.
+     * An output whose content did not change is left alone, even when the file on disk was modified.
+     * @param app The application directory
+     * @param previous The manifest the application was generated with
+     * @param next The manifest of the new outputs
+     * @return The files to write and delete, and the modified files which are in the way
+     */
+    protected Changes changes(Path app, Manifest previous, Manifest next) throws IOException {
+        List<String> writes = new ArrayList<>();
+        List<String> deletes = new ArrayList<>();
+        List<String> conflicts = new ArrayList<>();
+        int unchanged = 0;
+        for (Map.Entry<String, String> output : next.files().entrySet()) {
+            String path = output.getKey();
+            String before = previous.files().get(path);
+            if (output.getValue().equals(before)) {
+                unchanged++;
+                continue;
+            }
+            String current = hash(app.resolve(path));
+            if (output.getValue().equals(current))
+                unchanged++;
+            else if (current == null || current.equals(before))
+                writes.add(path);
+            else {
+                conflicts.add(path);
+                writes.add(path);
+            }
+        }
+        for (Map.Entry<String, String> output : previous.files().entrySet()) {
+            String path = output.getKey();
+            if (next.files().containsKey(path))
+                continue;
+            String current = hash(app.resolve(path));
+            if (current == null)
+                continue;
+            if (!current.equals(output.getValue()))
+                conflicts.add(path);
+            deletes.add(path);
+        }
+        return new Changes(writes, deletes, conflicts, unchanged);
+    }
+
+    /**
+     * @return The hash of a regular file, null if there is none
+     */
+    private static String hash(Path file) throws IOException {
+        return Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS) ? StagedTree.hash(file) : null;
+    }
+}
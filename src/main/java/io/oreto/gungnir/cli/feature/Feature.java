@@ -0,0 +1,61 @@
+package io.oreto.gungnir.cli.feature;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * An optional part of a generated application, such as a json provider or database support.
+ * Features are discovered with {@link java.util.ServiceLoader}, so feature packs only need to be on the class path
+ * with a META-INF/services/io.oreto.gungnir.cli.feature.Feature entry.
+ */
+public interface Feature {
+    /**
+     * @return The unique feature name
+     */
+    String name();
+
+    /**
+     * @return Names of the features this feature needs, they are selected along with it and applied first
+     */
+    default Set<String> requires() {
+        return Set.of();
+    }
+
+    /**
+     * @return groupIds of the template pom dependencies which belong to this feature,
+     * they are removed when the feature is not selected
+     */
+    default Set<String> groupIds() {
+        return Set.of();
+    }
+
+    /**
+     * @return The template package holding the sources of this feature, relocated into the application package
+     * when the feature is selected, null if the feature has no template sources
+     */
+    default String sourcePackage() {
+        return null;
+    }
+
+    /**
+     * @return Paths relative to the application package which {@link #contribute(FeatureContext)} writes,
+     * features with overlapping outputs are applied one after the other
+     */
+    default Set<String> outputs() {
+        return Set.of();
+    }
+
+    /**
+     * Add or change application files, runs in parallel with features which do not depend on this one
+     * @param context The application being generated
+     */
+    default void contribute(FeatureContext context) throws IOException {
+    }
+
+    /**
+     * Change the main class, runs after every feature contributed, in dependency order
+     * @param mainClass The main class source
+     */
+    default void mainClass(MainClass mainClass) {
+    }
+}
@@ -0,0 +1,13 @@
+package io.oreto.gungnir.cli.feature;
+
+import io.oreto.gungnir.cli.template.StagedTree;
+
+/**
+ * The application a feature contributes to
+ * @param tree The staged application files
+ * @param packageName The application package
+ * @param sourceRoot The staged path of the application package sources, such as src/main/java/a/b/c
+ * @param mainClassName The simple name of the main class
+ */
+public record FeatureContext(StagedTree tree, String packageName, String sourceRoot, String mainClassName) {
+}
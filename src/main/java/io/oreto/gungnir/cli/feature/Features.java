@@ -0,0 +1,61 @@
+package io.oreto.gungnir.cli.feature;
+
+import java.util.*;
+
+/**
+ * The features available on the class path
+ */
+public class Features {
+    private static List<Feature> all;
+
+    /**
+     * @return Every feature found with {@link ServiceLoader}, loaded once
+     */
+    public static synchronized List<Feature> all() {
+        if (all == null) {
+            Map<String, Feature> features = new LinkedHashMap<>();
+            for (Feature feature : ServiceLoader.load(Feature.class, Features.class.getClassLoader())) {
+                Feature existing = features.putIfAbsent(feature.name(), feature);
+                if (existing != null)
+                    throw new IllegalStateException(String.format("feature %s is provided by both %s and %s"
+                            , feature.name(), existing.getClass().getName(), feature.getClass().getName()));
+            }
+            all = List.copyOf(features.values());
+        }
+        return all;
+    }
+
+    /**
+     * @param name A feature name
+     * @return The feature, Optional.empty if no such feature is available
+     */
+    public static Optional<Feature> find(String name) {
+        return all().stream().filter(feature -> feature.name().equals(name)).findFirst();
+    }
+
+    /**
+     * Select features along with every feature they require
+     * @param names The selected feature names
+     * @return The selected features, each one after the features it requires
+     */
+    public static List<Feature> resolve(Collection<String> names) {
+        Map<String, Feature> resolved = new LinkedHashMap<>();
+        for (String name : names)
+            resolve(name, resolved, new LinkedHashSet<>());
+        return new ArrayList<>(resolved.values());
+    }
+
+    private static void resolve(String name, Map<String, Feature> resolved, Set<String> path) {
+        if (resolved.containsKey(name))
+            return;
+        if (!path.add(name))
+            throw new IllegalStateException(String.format("features require each other: %s -> %s"
+                    , String.join(" -> ", path), name));
+        Feature feature = find(name).orElseThrow(() -> new IllegalArgumentException(
+                String.format("unknown feature %s", name)));
+        for (String required : feature.requires())
+            resolve(required, resolved, path);
+        path.remove(name);
+        resolved.put(name, feature);
+    }
+}
@@ -0,0 +1,50 @@
+package io.oreto.gungnir.cli.feature;
+
+import io.oreto.gungnir.cli.util.Coder;
+import io.oreto.gungnir.cli.util.Str;
+
+/**
+ * Gson json mapper, the template sources provide the mapper and the main class is wired to it
+ */
+public class GsonFeature implements Feature {
+    static final String GSON_MAPPER = "GsonMapper";
+
+    @Override
+    public String name() {
+        return "gson";
+    }
+
+    @Override
+    public String sourcePackage() {
+        return name();
+    }
+
+    @Override
+    public void mainClass(MainClass mainClass) {
+        Str str = mainClass.getSource();
+        int indentSize = mainClass.indent();
+        // both anchors are taken before editing, the import comes first so the class edit does not move it
+        int classClose = mainClass.classClose();
+        int firstImport = mainClass.firstImport();
+        if (classClose >= 0) {
+            int i = classClose - 1;
+            str.insert(i, "\n", "\n");
+            i += 2;
+            Coder coder = new Coder(indentSize);
+            coder.setIndentationLevel(1);
+            Coder.Method method = coder.method("jsonMapper", "JsonMapper")
+                    .modifiers(Coder.Modifiers.PROTECTED)
+                    .annotate(new Coder.Annotation("Override"));
+            method.getBody().statement("return ", GSON_MAPPER + ".mapper");
+            str.replaceFrom(i, i, true, method.toString());
+
+            str.insert(firstImport - 1
+                    , "import io.javalin.json.JsonMapper;"
+                    , "\n"
+                    , String.format("import %s.%s.%s;"
+                            , mainClass.getPackageName()
+                            , sourcePackage()
+                            , GSON_MAPPER));
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package io.oreto.gungnir.cli.feature;
+
+import java.util.Set;
+
+/**
+ * Guice dependency injection
+ */
+public class GuiceFeature implements Feature {
+    @Override
+    public String name() {
+        return "guice";
+    }
+
+    @Override
+    public Set<String> groupIds() {
+        return Set.of("com.google.inject");
+    }
+}
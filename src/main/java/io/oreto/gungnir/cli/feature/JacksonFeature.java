@@ -0,0 +1,18 @@
+package io.oreto.gungnir.cli.feature;
+
+import java.util.Set;
+
+/**
+ * Jackson json mapper
+ */
+public class JacksonFeature implements Feature {
+    @Override
+    public String name() {
+        return "jackson";
+    }
+
+    @Override
+    public Set<String> groupIds() {
+        return Set.of("com.fasterxml.jackson.core");
+    }
+}
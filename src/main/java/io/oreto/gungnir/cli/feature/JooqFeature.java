@@ -0,0 +1,18 @@
+package io.oreto.gungnir.cli.feature;
+
+import java.util.Set;
+
+/**
+ * jOOQ database support
+ */
+public class JooqFeature implements Feature {
+    @Override
+    public String name() {
+        return "jooq";
+    }
+
+    @Override
+    public Set<String> groupIds() {
+        return Set.of("org.jooq");
+    }
+}
@@ -0,0 +1,18 @@
+package io.oreto.gungnir.cli.feature;
+
+import java.util.Set;
+
+/**
+ * jte view renderer
+ */
+public class JteFeature implements Feature {
+    @Override
+    public String name() {
+        return "jte";
+    }
+
+    @Override
+    public Set<String> groupIds() {
+        return Set.of("gg.jte");
+    }
+}
@@ -0,0 +1,93 @@
+package io.oreto.gungnir.cli.feature;
+
+import io.oreto.gungnir.cli.util.Str;
+
+/**
+ * The main class source as features see it
+ */
+public class MainClass {
+    private final Str source;
+    private final String packageName;
+    private final String name;
+    private final int plannedLength;
+    private final int plannedClassClose;
+    private final int plannedFirstImport;
+    private Integer indent;
+
+    public MainClass(Str source, String packageName, String name) {
+        this(source, packageName, name, null, null, null);
+    }
+
+    /**
+     * A main class with anchors known from the template plan, they are used as long as the source is unchanged
+     * @param source The main class source
+     * @param packageName The application package
+     * @param name The main class name
+     * @param classClose Position of the last '}', null if unknown
+     * @param firstImport Position of the first import, null if unknown
+     * @param indent The indentation size of class members, null if unknown
+     */
+    public MainClass(Str source, String packageName, String name
+            , Integer classClose, Integer firstImport, Integer indent) {
+        this.source = source;
+        this.packageName = packageName;
+        this.name = name;
+        this.plannedLength = source.length();
+        this.plannedClassClose = classClose == null ? -1 : classClose;
+        this.plannedFirstImport = firstImport == null ? -1 : firstImport;
+        this.indent = indent;
+    }
+
+    public Str getSource() {
+        return source;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Position of the last '}', -1 if there is none
+     */
+    public int classClose() {
+        return plannedClassClose >= 0 && source.length() == plannedLength
+                ? plannedClassClose
+                : source.findLastChar('}');
+    }
+
+    /**
+     * @return Position of the first import statement, -1 if there is none
+     */
+    public int firstImport() {
+        return plannedFirstImport >= 0 && source.length() == plannedLength
+                ? plannedFirstImport
+                : source.find("import ");
+    }
+
+    /**
+     * @return The indentation size of the class members
+     */
+    public int indent() {
+        if (indent == null) {
+            Str tab = Str.of();
+            int open = source.findChar('{');
+            if (open >= 0) {
+                for (int i = open + 1; i < source.length(); i++) {
+                    char c = source.charAt(i);
+                    if (c == '\n' || c == '\r')
+                        tab.delete();
+                    else if (Character.isWhitespace(c))
+                        tab.add(c);
+                    else
+                        break;
+                }
+            }
+            indent = tab.length();
+        }
+        return indent;
+    }
+}
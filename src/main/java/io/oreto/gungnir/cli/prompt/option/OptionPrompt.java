@@ -45,10 +45,10 @@ public class OptionPrompt<T extends Enum<T> & InputOption> {
                 if (value.isBlank()) {
                    next = defaultOption;
                 } else {
-                    Optional<Integer> id = Str.toInteger(value);
+                    OptionalInt id = Str.parseInt(value);
                     if (!options.isEmpty()) {
                         if (id.isPresent() && isNumbered())
-                            next = options.stream().filter(option -> option.match(id.get())).findFirst().orElse(null);
+                            next = options.stream().filter(option -> option.match(id.getAsInt())).findFirst().orElse(null);
                         else
                             next = options.stream().filter(option -> option.match(value)).findFirst().orElse(null);
                         if (next == null)
@@ -0,0 +1,110 @@
+package io.oreto.gungnir.cli.template;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A template packed into a zip, tar or tar.gz archive, decompressed while it is read.
+ * Downloaded archives usually wrap the project in one top level directory, such as name-revision/,
+ * which is stripped from every entry.
+ */
+public class ArchiveSource implements TemplateSource {
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    public enum Format {
+        ZIP, TAR, TAR_GZ
+    }
+
+    /**
+     * Opens a fresh stream of the archive bytes
+     */
+    @FunctionalInterface
+    public interface Opener {
+        InputStream open() throws IOException;
+    }
+
+    private final Opener opener;
+    private final Format format;
+
+    public ArchiveSource(Opener opener, Format format) {
+        this.opener = opener;
+        this.format = format;
+    }
+
+    public ArchiveSource(Path archive, Format format) {
+        this(() -> Files.newInputStream(archive), format);
+    }
+
+    /**
+     * An entry read from the archive
+     */
+    private record Entry(String name, boolean directory, int mode, byte[] content) {
+    }
+
+    /**
+     * The archive is decompressed once, entries are held in memory until the wrapping directory is known
+     */
+    @Override
+    public void read(EntryVisitor visitor) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        scan((name, directory, mode, content) ->
+                entries.add(new Entry(name, directory, mode, directory ? null : content.readAllBytes())));
+        String root = root(entries);
+        for (Entry entry : entries) {
+            String name = entry.name().substring(root.length());
+            if (!name.isEmpty())
+                visitor.visit(name, entry.directory(), entry.mode(), entry.directory()
+                        ? InputStream.nullInputStream()
+                        : new ByteArrayInputStream(entry.content()));
+        }
+    }
+
+    /**
+     * Find the single directory which holds every entry
+     * @param entries The archive entries
+     * @return The directory with its trailing slash, empty if entries live at the top level
+     */
+    private static String root(List<Entry> entries) {
+        String root = null;
+        for (Entry entry : entries) {
+            int slash = entry.name().indexOf('/');
+            if (slash < 0 && !entry.directory())
+                return "";
+            String top = slash < 0 ? entry.name() + '/' : entry.name().substring(0, slash + 1);
+            if (root == null)
+                root = top;
+            else if (!root.equals(top))
+                return "";
+        }
+        return root == null ? "" : root;
+    }
+
+    private void scan(EntryVisitor visitor) throws IOException {
+        try (InputStream in = new BufferedInputStream(opener.open(), BUFFER_SIZE)) {
+            switch (format) {
+                case TAR -> Tar.read(in, visitor);
+                case TAR_GZ -> Tar.read(new GZIPInputStream(in, BUFFER_SIZE), visitor);
+                case ZIP -> readZip(in, visitor);
+            }
+        }
+    }
+
+    private static void readZip(InputStream in, EntryVisitor visitor) throws IOException {
+        ZipInputStream zip = new ZipInputStream(in);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            // zip streams carry no unix permissions
+            visitor.visit(entry.getName(), entry.isDirectory(), entry.isDirectory() ? 0755 : 0644, zip);
+            zip.closeEntry();
+        }
+    }
+}
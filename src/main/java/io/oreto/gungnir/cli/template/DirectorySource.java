@@ -0,0 +1,101 @@
+package io.oreto.gungnir.cli.template;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.UnaryOperator;
+
+/**
+ * A template stored as a plain directory, such as a working tree or a cached snapshot
+ */
+public class DirectorySource implements TemplateSource {
+    static final String GIT_DIR = ".git";
+
+    private final Path root;
+    private boolean readOnly;
+
+    public DirectorySource(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * The directory is a read only store, such as a {@link TemplateCache} snapshot.
+     * Its read only files may be hard linked into applications, they are staged writable by their owner.
+     * @param readOnly True if the directory never changes
+     * @return The DirectorySource object
+     */
+    public DirectorySource readOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+        return this;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    @Override
+    public void read(EntryVisitor visitor) throws IOException {
+        walk((path, directory) -> {
+            if (directory) {
+                visitor.visit(entryName(path), true, 0755, InputStream.nullInputStream());
+            } else {
+                int mode = StagedTree.mode(path);
+                try (InputStream in = Files.newInputStream(path)) {
+                    visitor.visit(entryName(path), false, mode, in);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stage the template without reading file contents, files are only read if they are needed
+     */
+    @Override
+    public void stage(StagedTree tree, UnaryOperator<String> layout) throws IOException {
+        walk((path, directory) -> {
+            String destination = layout.apply(entryName(path));
+            if (destination == null)
+                return;
+            if (directory) {
+                tree.mkdirs(destination);
+            } else {
+                int mode = StagedTree.mode(path);
+                boolean linkable = readOnly && (mode & 0222) == 0;
+                tree.add(destination, path, linkable ? mode | 0200 : mode, linkable);
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface PathVisitor {
+        void visit(Path path, boolean directory) throws IOException;
+    }
+
+    private void walk(PathVisitor visitor) throws IOException {
+        if (!Files.isDirectory(root))
+            throw new NoSuchFileException(root.toString());
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.getFileName() != null && GIT_DIR.equals(dir.getFileName().toString()))
+                    return FileVisitResult.SKIP_SUBTREE;
+                if (!dir.equals(root))
+                    visitor.visit(dir, true);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile())
+                    visitor.visit(file, false);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    protected String entryName(Path path) {
+        String name = root.relativize(path).toString();
+        return path.getFileSystem().getSeparator().equals("/") ? name : name.replace('\\', '/');
+    }
+}
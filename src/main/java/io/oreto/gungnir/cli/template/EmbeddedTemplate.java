@@ -0,0 +1,58 @@
+package io.oreto.gungnir.cli.template;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * A template snapshot packed into the application resources at build time (see the embed-template profile).
+ * The compressed archive is read from the resources in one pass and staged in memory
+ * through {@link TemplateSource#stage}, no process is spawned and no network is needed.
+ */
+public class EmbeddedTemplate extends ArchiveSource {
+    static final String RESOURCE_DIR = "/template/";
+
+    /**
+     * Find the embedded snapshot of a template
+     * @param name The template name
+     * @return The embedded template, Optional.empty if this build does not contain one
+     */
+    public static Optional<EmbeddedTemplate> find(String name) {
+        String archive = RESOURCE_DIR + name + ".tar.gz";
+        return EmbeddedTemplate.class.getResource(archive) == null
+                ? Optional.empty()
+                : Optional.of(new EmbeddedTemplate(name, archive));
+    }
+
+    private final String name;
+
+    private EmbeddedTemplate(String name, String archive) {
+        super(() -> {
+            InputStream in = EmbeddedTemplate.class.getResourceAsStream(archive);
+            if (in == null)
+                throw new NoSuchFileException(archive);
+            return in;
+        }, Format.TAR_GZ);
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The commit hash the snapshot was packed from, Optional.empty if unknown
+     */
+    @Override
+    public Optional<String> revision() throws IOException {
+        try (InputStream in = EmbeddedTemplate.class.getResourceAsStream(RESOURCE_DIR + name + ".properties")) {
+            if (in == null)
+                return Optional.empty();
+            Properties properties = new Properties();
+            properties.load(in);
+            return Optional.ofNullable(properties.getProperty("revision"));
+        }
+    }
+}
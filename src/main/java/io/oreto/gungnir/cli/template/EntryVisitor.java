@@ -0,0 +1,18 @@
+package io.oreto.gungnir.cli.template;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Receives the entries of a template in source order
+ */
+@FunctionalInterface
+public interface EntryVisitor {
+    /**
+     * @param name The entry path, relative and '/' separated
+     * @param directory True if the entry is a directory
+     * @param mode The unix permission bits
+     * @param content The entry content, only valid during the call
+     */
+    void visit(String name, boolean directory, int mode, InputStream content) throws IOException;
+}
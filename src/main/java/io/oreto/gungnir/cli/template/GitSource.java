@@ -0,0 +1,49 @@
+package io.oreto.gungnir.cli.template;
+
+import io.oreto.gungnir.cli.vsc.Git;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * A template read from a git repository with git archive, so no clone and no .git directory is created
+ */
+public class GitSource implements TemplateSource {
+    static final String DEFAULT_REF = "HEAD";
+
+    /**
+     * @param path A directory
+     * @return True if the directory is a bare repository or a .git directory
+     */
+    public static boolean isGitDir(Path path) {
+        return Files.isRegularFile(path.resolve("HEAD")) && Files.isDirectory(path.resolve("objects"));
+    }
+
+    private final String repository;
+    private final String ref;
+
+    public GitSource(String repository, String ref) {
+        this.repository = repository;
+        this.ref = ref;
+    }
+
+    public GitSource(String repository) {
+        this(repository, DEFAULT_REF);
+    }
+
+    @Override
+    public void read(EntryVisitor visitor) throws IOException, InterruptedException {
+        Git.archive(repository, ref, in -> Tar.read(new BufferedInputStream(in), visitor));
+    }
+
+    @Override
+    public Optional<String> revision() throws IOException, InterruptedException {
+        return Git.isRemote(repository)
+                ? Optional.empty()
+                : Optional.of(Git.revParse(Paths.get(repository), ref));
+    }
+}
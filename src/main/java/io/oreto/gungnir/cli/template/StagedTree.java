@@ -0,0 +1,536 @@
+package io.oreto.gungnir.cli.template;
+
+import io.oreto.gungnir.cli.util.FileCopier;
+import io.oreto.gungnir.cli.util.FileDeleter;
+import io.oreto.gungnir.cli.util.Str;
+import io.oreto.gungnir.cli.util.Workers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * In memory file tree used to stage an application before anything touches the disk.
+ * A template is loaded once, every transformation reads and writes the staged files,
+ * then {@link #commit(Path)} writes the final tree in one ordered, batched pass.
+ * Files loaded from a template directory stay on disk until they are read or modified,
+ * unmodified ones from a read only template store can be hard linked on flush.
+ * Paths are relative and '/' separated.
+ */
+public class StagedTree {
+    static final int BATCH_FILES = 32;
+    static final String STAGING_INFIX = ".staging-";
+
+    /**
+     * A staged file, either held in memory or still backed by its template file
+     */
+    static final class Node {
+        private byte[] content;
+        private final Path origin;
+        private final int mode;
+        private final boolean linkable;
+        private boolean modified;
+        // shared by the copies of a node, their content is the same until one of them is rewritten
+        private final AtomicReference<byte[]> digest;
+
+        Node(byte[] content, Path origin, int mode, boolean linkable, boolean modified) {
+            this(content, origin, mode, linkable, modified, new AtomicReference<>());
+        }
+
+        private Node(byte[] content, Path origin, int mode, boolean linkable, boolean modified
+                , AtomicReference<byte[]> digest) {
+            this.content = content;
+            this.origin = origin;
+            this.mode = mode;
+            this.linkable = linkable;
+            this.modified = modified;
+            this.digest = digest;
+        }
+
+        synchronized byte[] content() throws IOException {
+            if (content == null)
+                content = Files.readAllBytes(origin);
+            return content;
+        }
+
+        Node copy() {
+            return new Node(content, origin, mode, linkable, modified, digest);
+        }
+
+        /**
+         * @return The SHA-256 of the content, computed once for a node and all its copies
+         */
+        byte[] digest() throws IOException {
+            byte[] cached = digest.get();
+            if (cached == null) {
+                byte[] loaded;
+                synchronized (this) {
+                    loaded = content;
+                }
+                cached = loaded == null ? StagedTree.digest(origin) : StagedTree.digest(loaded);
+                digest.set(cached);
+            }
+            return cached;
+        }
+    }
+
+    /**
+     * Totals of a flush
+     * @param files Number of files written
+     * @param directories Number of directories created
+     * @param bytes Number of bytes written
+     * @param links Number of unmodified template files linked instead of written
+     * @param unchanged Number of files kept from the replaced tree because their contents did not change
+     */
+    public record FlushResult(long files, long directories, long bytes, long links, long unchanged) {
+    }
+
+    /**
+     * What one flush batch left for the copier
+     * @param kept Files kept from the replaced tree, by destination
+     * @param origins Unmodified template files, by destination
+     * @param copyOnly Template files which may not be linked
+     * @param bytes Number of bytes the batch wrote itself
+     */
+    private record Materialized(Map<Path, Path> kept, Map<Path, Path> origins, Set<Path> copyOnly, long bytes) {
+    }
+
+    /**
+     * Load a template into a new staged tree
+     * @param source The template source
+     * @param layout Maps each template entry to its staged path, null skips the entry
+     * @return The staged tree
+     */
+    public static StagedTree load(TemplateSource source, UnaryOperator<String> layout)
+            throws IOException, InterruptedException {
+        StagedTree tree = new StagedTree();
+        source.stage(tree, layout);
+        return tree;
+    }
+
+    private final SortedMap<String, Node> files;
+    private final SortedSet<String> directories;
+    private boolean link;
+
+    public StagedTree() {
+        this.files = Collections.synchronizedSortedMap(new TreeMap<>());
+        this.directories = Collections.synchronizedSortedSet(new TreeSet<>());
+    }
+
+    private StagedTree(StagedTree other, UnaryOperator<String> layout) {
+        this();
+        synchronized (other.files) {
+            other.files.forEach((path, node) -> {
+                String destination = layout.apply(path);
+                if (destination != null)
+                    files.put(normalize(destination), node.copy());
+            });
+        }
+        synchronized (other.directories) {
+            for (String directory : other.directories) {
+                String destination = layout.apply(directory);
+                if (destination != null)
+                    directories.add(normalize(destination));
+            }
+        }
+        this.link = other.link;
+    }
+
+    /**
+     * @return An independent copy of this tree, file contents are shared until they are rewritten
+     */
+    public StagedTree copy() {
+        return copy(UnaryOperator.identity());
+    }
+
+    /**
+     * Copy this tree into another layout, so a template loaded once can be laid out for many applications
+     * @param layout Maps each path to its path in the copy, null leaves it out
+     * @return An independent copy of this tree, file contents are shared until they are rewritten
+     */
+    public StagedTree copy(UnaryOperator<String> layout) {
+        return new StagedTree(this, layout);
+    }
+
+    /**
+     * Hard link files which are still backed by a file of a read only template store when flushing,
+     * linked files share that file and stay read only
+     * @param link True to link
+     * @return The StagedTree object
+     */
+    public StagedTree link(boolean link) {
+        this.link = link;
+        return this;
+    }
+
+    /**
+     * Stage a file held in memory as it is in the template
+     * @param path The staged path
+     * @param content The file content
+     * @param mode The unix permission bits
+     */
+    public void add(String path, byte[] content, int mode) {
+        files.put(normalize(path), new Node(content, null, mode, false, false));
+    }
+
+    /**
+     * Stage a template file without reading it
+     * @param path The staged path
+     * @param origin The template file
+     * @param mode The unix permission bits
+     * @param linkable True if the template file is read only and never changes, so it may be hard linked
+     */
+    public void add(String path, Path origin, int mode, boolean linkable) {
+        files.put(normalize(path), new Node(null, origin, mode, linkable, false));
+    }
+
+    /**
+     * Stage every file and directory of another tree under a directory, contents are shared until rewritten
+     * @param prefix The directory to put the other tree in
+     * @param other The tree to include
+     */
+    public void include(String prefix, StagedTree other) {
+        String dir = normalize(prefix) + '/';
+        synchronized (other.files) {
+            other.files.forEach((path, node) -> files.put(dir + path, node.copy()));
+        }
+        synchronized (other.directories) {
+            for (String directory : other.directories)
+                directories.add(dir + directory);
+        }
+        directories.add(normalize(prefix));
+    }
+
+    /**
+     * Stage a directory, only needed for directories which may stay empty
+     * @param path The directory path
+     */
+    public void mkdirs(String path) {
+        directories.add(normalize(path));
+    }
+
+    public boolean exists(String path) {
+        return files.containsKey(normalize(path));
+    }
+
+    /**
+     * @return The staged file paths in sorted order
+     */
+    public List<String> paths() {
+        synchronized (files) {
+            return new ArrayList<>(files.keySet());
+        }
+    }
+
+    /**
+     * @param prefix A directory path
+     * @return The staged file paths under the directory
+     */
+    public List<String> paths(String prefix) {
+        String dir = normalize(prefix) + '/';
+        synchronized (files) {
+            return new ArrayList<>(files.subMap(dir, dir + Character.MAX_VALUE).keySet());
+        }
+    }
+
+    public byte[] read(String path) throws IOException {
+        Node node = files.get(normalize(path));
+        if (node == null)
+            throw new NoSuchFileException(path);
+        return node.content();
+    }
+
+    public String readString(String path) throws IOException {
+        return new String(read(path), StandardCharsets.UTF_8);
+    }
+
+    public void write(String path, byte[] content) {
+        String normalized = normalize(path);
+        Node node = files.get(normalized);
+        files.put(normalized, new Node(content, null, node == null ? 0644 : node.mode, false, true));
+    }
+
+    public void writeString(String path, CharSequence content) {
+        write(path, Str.getBytes(content));
+    }
+
+    public void delete(String path) {
+        files.remove(normalize(path));
+    }
+
+    /**
+     * @param path A staged file
+     * @return The SHA-256 of the file content as hex, a file still backed by its template file is not loaded
+     */
+    public String hash(String path) throws IOException {
+        Node node = files.get(normalize(path));
+        if (node == null)
+            throw new NoSuchFileException(path);
+        return HexFormat.of().formatHex(node.digest());
+    }
+
+    /**
+     * @param file A file on disk
+     * @return The SHA-256 of the file content as hex
+     */
+    public static String hash(Path file) throws IOException {
+        return HexFormat.of().formatHex(digest(file));
+    }
+
+    /**
+     * Write some staged files into an existing directory and delete others, every other file is left alone.
+     * Each file is written to a temporary sibling and renamed over the old one, so it is never seen half written.
+     * @param target The directory to update
+     * @param writes The staged paths to write
+     * @param deletes The paths to delete, directories they leave empty are removed
+     */
+    public void update(Path target, Collection<String> writes, Collection<String> deletes) throws IOException {
+        Path root = target.toAbsolutePath().normalize();
+        boolean posix = root.getFileSystem().supportedFileAttributeViews().contains("posix");
+        for (String path : writes) {
+            Node node = files.get(normalize(path));
+            if (node == null)
+                throw new NoSuchFileException(path);
+            Path file = resolve(root, normalize(path));
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(String.format(".%s%s%s"
+                    , file.getFileName(), STAGING_INFIX, UUID.randomUUID()));
+            try {
+                writeFile(tmp, node.content(), node.mode, posix);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+        for (String path : deletes) {
+            Path file = resolve(root, normalize(path));
+            Files.deleteIfExists(file);
+            for (Path dir = file.getParent(); !dir.equals(root) && isEmptyDirectory(dir); dir = dir.getParent())
+                Files.delete(dir);
+        }
+    }
+
+    private static boolean isEmptyDirectory(Path dir) throws IOException {
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS))
+            return false;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            return !entries.iterator().hasNext();
+        }
+    }
+
+    /**
+     * Build the tree in a hidden sibling staging directory, then publish it with an atomic rename.
+     * An existing target is swapped out and deleted in the background, files which are unchanged from it
+     * are linked into the new tree so they keep their timestamps. Nothing waits for the deletion,
+     * what is left of it when the process exits is up to {@link FileDeleter#sweep(Path, String)}.
+     * If anything fails the staging directory is removed and the target is left as it was.
+     * @param target The directory to create or replace
+     * @return The flush totals
+     */
+    public FlushResult commit(Path target) throws IOException {
+        Path root = target.toAbsolutePath().normalize();
+        Path staging = root.resolveSibling(String.format(".%s%s%s", root.getFileName(), STAGING_INFIX, UUID.randomUUID()));
+        Path previous = Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS) ? root : null;
+        FlushResult result;
+        try {
+            result = flush(staging, previous);
+            publish(staging, root);
+        } catch (IOException | RuntimeException e) {
+            try {
+                FileDeleter.delete(staging);
+            } catch (IOException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        }
+        return result;
+    }
+
+    private static void publish(Path staging, Path root) throws IOException {
+        if (Files.notExists(root, LinkOption.NOFOLLOW_LINKS)) {
+            Files.move(staging, root, StandardCopyOption.ATOMIC_MOVE);
+            return;
+        }
+        Path trash = FileDeleter.trashPath(root);
+        Files.move(root, trash, StandardCopyOption.ATOMIC_MOVE);
+        try {
+            Files.move(staging, root, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.move(trash, root, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException restore) {
+                e.addSuppressed(restore);
+            }
+            throw e;
+        }
+        FileDeleter.reclaim(trash);
+    }
+
+    /**
+     * Write the staged tree into a directory: all directories first, then file contents in parallel batches
+     * @param root The directory to write into, created if missing
+     * @param previous The tree being replaced, its unchanged files are linked, null if there is none
+     * @return The flush totals
+     */
+    private FlushResult flush(Path root, Path previous) throws IOException {
+        SortedSet<Path> dirs = new TreeSet<>();
+        dirs.add(root);
+        for (String directory : directories)
+            dirs.add(resolve(root, directory));
+        List<Map.Entry<String, Node>> entries;
+        synchronized (files) {
+            entries = new ArrayList<>(files.entrySet());
+        }
+        for (Map.Entry<String, Node> entry : entries)
+            dirs.add(resolve(root, entry.getKey()).getParent());
+        for (Path dir : dirs)
+            Files.createDirectories(dir);
+
+        // contents held in memory are written here, files still on disk go through the copier
+        boolean posix = root.getFileSystem().supportedFileAttributeViews().contains("posix");
+        List<Workers.Task<Materialized>> tasks = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i += BATCH_FILES) {
+            List<Map.Entry<String, Node>> batch = entries.subList(i, Math.min(i + BATCH_FILES, entries.size()));
+            tasks.add(() -> {
+                Map<Path, Path> kept = new HashMap<>();
+                Map<Path, Path> origins = new HashMap<>();
+                Set<Path> copyOnly = new HashSet<>();
+                long bytes = 0;
+                for (Map.Entry<String, Node> entry : batch) {
+                    Path path = resolve(root, entry.getKey());
+                    Node node = entry.getValue();
+                    Path old = previous == null ? null : resolve(previous, entry.getKey());
+                    if (old != null && unchanged(node, old))
+                        kept.put(path, old);
+                    else if (!node.modified && node.content == null) {
+                        origins.put(path, node.origin);
+                        if (!node.linkable)
+                            copyOnly.add(node.origin);
+                    } else
+                        bytes += writeFile(path, node.content(), node.mode, posix);
+                }
+                return new Materialized(kept, origins, copyOnly, bytes);
+            });
+        }
+        Map<Path, Path> kept = new HashMap<>();
+        Map<Path, Path> origins = new HashMap<>();
+        Set<Path> copyOnly = new HashSet<>();
+        long bytes = 0;
+        for (Materialized materialized : Workers.all(tasks)) {
+            kept.putAll(materialized.kept());
+            origins.putAll(materialized.origins());
+            copyOnly.addAll(materialized.copyOnly());
+            bytes += materialized.bytes();
+        }
+        // unchanged files move over from the replaced tree, which is deleted right after
+        FileCopier.Result keptResult = new FileCopier().link(true).replaceExisting(true).preserveAttributes(true)
+                .copyFiles(null, kept);
+        // a link shares the template file, so only files of a read only store are linked, copies are writable
+        FileCopier.Result originResult = new FileCopier().link(link).copyOnly(copyOnly::contains).writable(true)
+                .replaceExisting(true).preserveAttributes(true)
+                .copyFiles(null, origins);
+        return new FlushResult(entries.size(), dirs.size(), bytes + keptResult.bytes() + originResult.bytes()
+                , originResult.links(), kept.size());
+    }
+
+    /**
+     * @param node A staged file
+     * @param existing The file at the same path in the tree being replaced
+     * @return True if the existing file has the same content and permissions
+     */
+    private static boolean unchanged(Node node, Path existing) throws IOException {
+        if (!Files.isRegularFile(existing, LinkOption.NOFOLLOW_LINKS))
+            return false;
+        byte[] content;
+        synchronized (node) {
+            content = node.content;
+        }
+        // only files of the same size and mode are worth hashing, the staged digest is shared between copies
+        long size = content == null ? Files.size(node.origin) : content.length;
+        return Files.size(existing) == size
+                && mode(existing) == (node.mode & 0777)
+                && Arrays.equals(node.digest(), digest(existing));
+    }
+
+    private static byte[] digest(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer))
+                digest.update(buffer, 0, n);
+        }
+        return digest.digest();
+    }
+
+    private static byte[] digest(byte[] content) {
+        return sha256().digest(content);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long writeFile(Path path, byte[] content, int mode, boolean posix) throws IOException {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE
+                , StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining())
+                out.write(buffer);
+        }
+        if (posix)
+            Files.setPosixFilePermissions(path, permissions(mode));
+        return content.length;
+    }
+
+    /**
+     * @param file An existing file
+     * @return The unix permission bits of the file, only 0755, 0644 or their read only variants
+     *          where posix permissions are not supported
+     */
+    static int mode(Path file) throws IOException {
+        if (!file.getFileSystem().supportedFileAttributeViews().contains("posix"))
+            return (Files.isExecutable(file) ? 0755 : 0644) & (Files.isWritable(file) ? 0777 : 0555);
+        int mode = 0;
+        for (PosixFilePermission permission : Files.getPosixFilePermissions(file))
+            mode |= 0400 >> permission.ordinal();
+        return mode;
+    }
+
+    private static Set<PosixFilePermission> permissions(int mode) {
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        for (PosixFilePermission permission : PosixFilePermission.values()) {
+            if ((mode & (0400 >> permission.ordinal())) != 0)
+                permissions.add(permission);
+        }
+        return permissions;
+    }
+
+    private static Path resolve(Path root, String path) throws IOException {
+        Path resolved = root.resolve(path).normalize();
+        if (!resolved.startsWith(root))
+            throw new IOException(String.format("staged path %s escapes %s", path, root));
+        return resolved;
+    }
+
+    static String normalize(String path) {
+        String normalized = path.replace('\\', '/');
+        while (normalized.endsWith("/"))
+            normalized = normalized.substring(0, normalized.length() - 1);
+        while (normalized.startsWith("./"))
+            normalized = normalized.substring(2);
+        return normalized;
+    }
+}
@@ -0,0 +1,195 @@
+package io.oreto.gungnir.cli.template;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal streaming reader for ustar/pax tar archives as produced by git archive.
+ * Entries are handed to a visitor in archive order, their content is never buffered.
+ */
+public class Tar {
+    static final int BLOCK = 512;
+
+    /**
+     * Read every regular file and directory entry of an uncompressed tar stream
+     * @param in The tar stream
+     * @param visitor Receives each entry
+     */
+    public static void read(InputStream in, EntryVisitor visitor) throws IOException {
+        byte[] header = new byte[BLOCK];
+        String longName = null;
+        while (readBlock(in, header)) {
+            if (isZeroBlock(header))
+                break;
+
+            String name = string(header, 0, 100);
+            int mode = (int) octal(header, 100, 8);
+            long size = octal(header, 124, 12);
+            char type = (char) header[156];
+            String prefix = "ustar".equals(string(header, 257, 5)) ? string(header, 345, 155) : "";
+            if (!prefix.isEmpty())
+                name = prefix + '/' + name;
+
+            switch (type) {
+                case 'x' -> {
+                    // pax extended header for the next entry
+                    longName = paxPath(new String(readFully(in, size), StandardCharsets.UTF_8));
+                    skipPadding(in, size);
+                }
+                case 'L' -> {
+                    // GNU long name for the next entry
+                    longName = string(readFully(in, size), 0, (int) size);
+                    skipPadding(in, size);
+                }
+                case '0', '\0', '5' -> {
+                    if (longName != null) {
+                        name = longName;
+                        longName = null;
+                    }
+                    boolean directory = type == '5' || name.endsWith("/");
+                    Bounded content = new Bounded(in, directory ? 0 : size);
+                    visitor.visit(name, directory, mode, content);
+                    content.skipRemaining();
+                    skipPadding(in, size);
+                }
+                default -> {
+                    // global headers, links and devices are not part of a template
+                    longName = null;
+                    skip(in, size);
+                    skipPadding(in, size);
+                }
+            }
+        }
+    }
+
+    private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+        int read = in.readNBytes(block, 0, BLOCK);
+        if (read == 0)
+            return false;
+        if (read < BLOCK)
+            throw new EOFException("truncated tar header");
+        return true;
+    }
+
+    private static boolean isZeroBlock(byte[] block) {
+        for (byte b : block) {
+            if (b != 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static String string(byte[] bytes, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0)
+            end++;
+        return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static long octal(byte[] bytes, int offset, int length) {
+        long value = 0;
+        int i = offset;
+        int end = offset + length;
+        while (i < end && bytes[i] == ' ')
+            i++;
+        for (; i < end; i++) {
+            byte b = bytes[i];
+            if (b < '0' || b > '7')
+                break;
+            value = (value << 3) + (b - '0');
+        }
+        return value;
+    }
+
+    private static String paxPath(String records) {
+        // records are "<length> <key>=<value>\n"
+        for (String record : records.split("\n")) {
+            int space = record.indexOf(' ');
+            if (space > 0 && record.startsWith("path=", space + 1))
+                return record.substring(space + 6);
+        }
+        return null;
+    }
+
+    private static byte[] readFully(InputStream in, long size) throws IOException {
+        byte[] bytes = in.readNBytes((int) size);
+        if (bytes.length < size)
+            throw new EOFException("truncated tar entry");
+        return bytes;
+    }
+
+    private static void skip(InputStream in, long size) throws IOException {
+        long remaining = size;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0)
+                    throw new EOFException("truncated tar entry");
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static void skipPadding(InputStream in, long size) throws IOException {
+        long rest = size % BLOCK;
+        if (rest > 0)
+            skip(in, BLOCK - rest);
+    }
+
+    /**
+     * Exposes exactly one entry of the underlying stream, closing it does not close the archive
+     */
+    static class Bounded extends FilterInputStream {
+        private long remaining;
+
+        Bounded(InputStream in, long size) {
+            super(in);
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int b = super.read();
+            if (b >= 0)
+                remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0)
+                remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        void skipRemaining() throws IOException {
+            Tar.skip(in, remaining);
+            remaining = 0;
+        }
+    }
+}
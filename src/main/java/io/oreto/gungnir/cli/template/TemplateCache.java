@@ -0,0 +1,276 @@
+package io.oreto.gungnir.cli.template;
+
+import io.oreto.gungnir.cli.util.FileDeleter;
+import io.oreto.gungnir.cli.util.FileUtils;
+import io.oreto.gungnir.cli.util.Str;
+import io.oreto.gungnir.cli.vsc.Git;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Local content addressed store of template snapshots.
+ * Each snapshot is a working tree (without .git) stored under the commit hash it was cloned from.
+ * Snapshots are filled in a private temporary directory and published with an atomic rename,
+ * so concurrent processes either see a complete snapshot or none at all.
+ * Snapshot files are made read only, so applications can hard link them without being able to change them.
+ * The HEAD file names the most recent snapshot, its modification time records the last remote check.
+ * Only the {@value #KEEP_SNAPSHOTS} most recent snapshots are kept, HEAD among them.
+ */
+public class TemplateCache {
+    static final String CACHE_DIR_ENV = "GUNGNIR_CACHE_DIR";
+    static final String HEAD = "HEAD";
+    static final String TMP_PREFIX = ".tmp-";
+    static final Duration DEFAULT_TTL = Duration.ofHours(1);
+    static final int KEEP_SNAPSHOTS = 3;
+
+    /**
+     * Determine the user cache directory for gungnir.
+     * GUNGNIR_CACHE_DIR takes precedence, otherwise the platform convention is used.
+     * @return The cache directory path
+     */
+    public static Path userCacheDir() {
+        String override = System.getenv(CACHE_DIR_ENV);
+        if (Str.isNotEmpty(override))
+            return Paths.get(override);
+
+        String home = System.getProperty("user.home");
+        String os = System.getProperty("os.name", "").toLowerCase();
+        if (os.contains("win")) {
+            String localAppData = System.getenv("LOCALAPPDATA");
+            return Str.isEmpty(localAppData)
+                    ? Paths.get(home, "AppData", "Local", "gungnir", "cache")
+                    : Paths.get(localAppData, "gungnir", "cache");
+        } else if (os.contains("mac")) {
+            return Paths.get(home, "Library", "Caches", "gungnir");
+        }
+        String xdg = System.getenv("XDG_CACHE_HOME");
+        return Str.isEmpty(xdg) ? Paths.get(home, ".cache", "gungnir") : Paths.get(xdg, "gungnir");
+    }
+
+    private final String project;
+    private final Path root;
+    private boolean offline;
+    private boolean refresh;
+    private Duration ttl;
+
+    public TemplateCache(String project, Path cacheDir) {
+        this.project = project;
+        this.root = cacheDir.resolve("templates").resolve(project);
+        this.ttl = DEFAULT_TTL;
+    }
+
+    public TemplateCache(String project) {
+        this(project, userCacheDir());
+    }
+
+    /**
+     * Never contact the remote, only use snapshots already in the cache
+     * @param offline True to work offline
+     * @return The TemplateCache object
+     */
+    public TemplateCache offline(boolean offline) {
+        this.offline = offline;
+        return this;
+    }
+
+    /**
+     * Check the remote for a newer revision even if the last check is not stale yet
+     * @param refresh True to force a remote check
+     * @return The TemplateCache object
+     */
+    public TemplateCache refresh(boolean refresh) {
+        this.refresh = refresh;
+        return this;
+    }
+
+    /**
+     * Set how long a remote check stays fresh
+     * @param ttl The staleness duration
+     * @return The TemplateCache object
+     */
+    public TemplateCache ttl(Duration ttl) {
+        this.ttl = ttl;
+        return this;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @param revision A template revision
+     * @return Where the {@link TemplatePlan} of a revision is saved, next to the snapshot of the revision
+     */
+    public Path planFile(String revision) {
+        return root.resolve(revision + TemplatePlan.PLAN_EXTENSION);
+    }
+
+    /**
+     * Resolve the snapshot directory of the current template revision, filling the cache when needed
+     * @return Path to a complete, read only snapshot
+     * @throws IOException if no snapshot is available
+     */
+    public Path resolve() throws IOException, InterruptedException {
+        Optional<String> current = head();
+        if (offline) {
+            return current.map(this::snapshot).orElseThrow(() ->
+                    new IOException(String.format("no cached template for %s, run once without --offline", project)));
+        }
+        if (current.isPresent() && !refresh && !isStale())
+            return snapshot(current.get());
+
+        Optional<String> remote;
+        try {
+            remote = Git.lsRemoteGh(project + ".git");
+        } catch (IOException e) {
+            // git is missing or failed to start, which is no different from an unreachable remote
+            remote = Optional.empty();
+        }
+        if (remote.isEmpty()) {
+            // remote unreachable, fall back to whatever is cached
+            return current.map(this::snapshot)
+                    .orElseThrow(() -> new IOException(String.format("unable to reach %s", project)));
+        }
+        String hash = remote.get();
+        if (!Files.isDirectory(snapshot(hash))) {
+            try {
+                hash = fill();
+            } catch (IOException e) {
+                if (current.isEmpty())
+                    throw e;
+                return snapshot(current.get());
+            }
+        }
+        publishHead(hash);
+        prune(hash);
+        return snapshot(hash);
+    }
+
+    /**
+     * Delete all but the most recent snapshots and their plans in the background,
+     * along with whatever earlier prunes left behind
+     * @param head The snapshot HEAD points to, which is always kept
+     */
+    protected void prune(String head) throws IOException {
+        FileDeleter.sweep(root, null);
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(root, child ->
+                Files.isDirectory(child) && !child.getFileName().toString().startsWith("."))) {
+            children.forEach(snapshots::add);
+        }
+        snapshots.remove(snapshot(head));
+        if (snapshots.size() < KEEP_SNAPSHOTS)
+            return;
+        Map<Path, FileTime> modified = new HashMap<>();
+        for (Path snapshot : snapshots)
+            modified.put(snapshot, Files.getLastModifiedTime(snapshot));
+        snapshots.sort(Comparator.comparing(modified::get).reversed());
+        for (Path snapshot : snapshots.subList(KEEP_SNAPSHOTS - 1, snapshots.size())) {
+            Files.deleteIfExists(planFile(snapshot.getFileName().toString()));
+            FileDeleter.deleteAsync(snapshot);
+        }
+    }
+
+    /**
+     * @return The snapshot the HEAD file points to, if it exists
+     */
+    protected Optional<String> head() throws IOException {
+        Path head = root.resolve(HEAD);
+        if (!Files.isRegularFile(head))
+            return Optional.empty();
+        String hash = Files.readString(head, StandardCharsets.UTF_8).trim();
+        return Str.isNotEmpty(hash) && Files.isDirectory(snapshot(hash)) ? Optional.of(hash) : Optional.empty();
+    }
+
+    protected boolean isStale() throws IOException {
+        FileTime checked = Files.getLastModifiedTime(root.resolve(HEAD));
+        return checked.toInstant().plus(ttl).isBefore(Instant.now());
+    }
+
+    protected Path snapshot(String hash) {
+        return root.resolve(hash);
+    }
+
+    /**
+     * Clone the template into a private directory and publish it under its commit hash
+     * @return The commit hash of the published snapshot
+     */
+    protected String fill() throws IOException, InterruptedException {
+        Files.createDirectories(root);
+        Path tmp = root.resolve(TMP_PREFIX + UUID.randomUUID());
+        try {
+            Git.cloneGh(project + ".git", tmp);
+            String hash = Git.revParse(tmp);
+            FileUtils.deleteDirectory(tmp.resolve(".git"));
+            readOnly(tmp);
+            try {
+                Files.move(tmp, snapshot(hash), StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileSystemException e) {
+                // another process published the same revision first, theirs is identical
+                if (!Files.isDirectory(snapshot(hash)))
+                    throw e;
+                FileUtils.deleteDirectory(tmp);
+            }
+            return hash;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            if (Files.exists(tmp))
+                FileUtils.deleteDirectory(tmp);
+            throw e;
+        }
+    }
+
+    /**
+     * Remove the write permissions of every file in a directory
+     * @param directory The directory
+     */
+    protected static void readOnly(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!attrs.isRegularFile())
+                    return FileVisitResult.CONTINUE;
+                PosixFileAttributeView posix = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+                if (posix != null) {
+                    Set<PosixFilePermission> permissions = posix.readAttributes().permissions();
+                    permissions.removeAll(EnumSet.of(PosixFilePermission.OWNER_WRITE
+                            , PosixFilePermission.GROUP_WRITE, PosixFilePermission.OTHERS_WRITE));
+                    posix.setPermissions(permissions);
+                } else {
+                    DosFileAttributeView dos = Files.getFileAttributeView(file, DosFileAttributeView.class);
+                    if (dos != null)
+                        dos.setReadOnly(true);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Atomically point HEAD at a snapshot, which also marks the remote check time
+     * @param hash The snapshot commit hash
+     */
+    protected void publishHead(String hash) throws IOException {
+        Files.createDirectories(root);
+        Path tmp = root.resolve(TMP_PREFIX + UUID.randomUUID());
+        FileUtils.writeString(tmp, hash);
+        Files.move(tmp, root.resolve(HEAD), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,239 @@
+package io.oreto.gungnir.cli.template;
+
+import io.oreto.gungnir.cli.util.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * The edit points of a template, found once per template revision.
+ * A plan records for each patched file its length and anchors: spans which are substituted and positions
+ * which later edits need. Applying a plan streams the file with the values substituted, the text is never
+ * searched again. Offsets count chars of the UTF-8 decoded file.
+ */
+public class TemplatePlan {
+    static final String HEADER = "gungnir-plan 1";
+    static final String PLAN_EXTENSION = ".plan";
+    static final String SRC_MAIN_JAVA = "src/main/java/";
+    static final String CLASS_START = "public class ";
+    static final String CLASS_EXTENDS = "extends";
+
+    /**
+     * What an anchor marks
+     */
+    public enum Kind {
+        /** span from "public class " up to "extends", replaced by the new declaration */
+        CLASS_HEADER,
+        /** an occurrence of the template main class name */
+        LAUNCH_NAME,
+        /** an occurrence of the template application name */
+        APP_NAME,
+        /** the indentation of the first class member, its length is the indentation size */
+        MEMBER_INDENT,
+        /** position of the last '}' */
+        CLASS_CLOSE,
+        /** position of the first "import " */
+        FIRST_IMPORT
+    }
+
+    /**
+     * @param kind What the anchor marks
+     * @param start Offset of the first char
+     * @param end Offset after the last char, same as start for positions
+     */
+    public record Anchor(Kind kind, int start, int end) {
+    }
+
+    /**
+     * The anchors of one file
+     * @param length The length of the file the anchors were found in
+     * @param anchors Anchors sorted by offset
+     */
+    public record FilePlan(int length, List<Anchor> anchors) {
+        /**
+         * @param kind An anchor kind
+         * @return The first anchor of the kind
+         */
+        public Optional<Anchor> first(Kind kind) {
+            return anchors.stream().filter(anchor -> anchor.kind() == kind).findFirst();
+        }
+    }
+
+    /**
+     * A file with the plan substitutions applied
+     * @param text The new text
+     * @param positions New offsets of the position anchors
+     */
+    public record Rendered(String text, Map<Kind, Integer> positions) {
+    }
+
+    /**
+     * Find the edit points of a template
+     * @param template The template with its own layout
+     * @param launchName The main class name of the template
+     * @param appName The application name of the template
+     * @param readme The path of the readme
+     * @return The plan
+     */
+    public static TemplatePlan compile(StagedTree template, String launchName, String appName, String readme)
+            throws IOException {
+        TemplatePlan plan = new TemplatePlan();
+        for (String path : template.paths()) {
+            String fileName = path.substring(path.lastIndexOf('/') + 1);
+            if (path.startsWith(SRC_MAIN_JAVA) && fileName.startsWith(launchName + '.') && plan.mainClass == null) {
+                plan.mainClass = path;
+                plan.files.put(path, compileMainClass(template.readString(path), launchName));
+            } else if (path.equals(readme)) {
+                String text = template.readString(path);
+                List<Anchor> anchors = new ArrayList<>();
+                occurrences(text, appName, Kind.APP_NAME, 0, text.length(), anchors);
+                plan.files.put(path, new FilePlan(text.length(), anchors));
+            }
+        }
+        return plan;
+    }
+
+    private static FilePlan compileMainClass(String text, String launchName) {
+        List<Anchor> anchors = new ArrayList<>();
+        int headerStart = text.indexOf(CLASS_START);
+        int headerEnd = headerStart < 0 ? -1 : text.indexOf(CLASS_EXTENDS, headerStart);
+        if (headerEnd > -1) {
+            anchors.add(new Anchor(Kind.CLASS_HEADER, headerStart, headerEnd));
+            occurrences(text, launchName, Kind.LAUNCH_NAME, 0, headerStart, anchors);
+            occurrences(text, launchName, Kind.LAUNCH_NAME, headerEnd, text.length(), anchors);
+        } else {
+            occurrences(text, launchName, Kind.LAUNCH_NAME, 0, text.length(), anchors);
+        }
+
+        int open = text.indexOf('{');
+        if (open > -1) {
+            int indentStart = open + 1;
+            int i = open + 1;
+            for (; i < text.length() && Character.isWhitespace(text.charAt(i)); i++) {
+                if (text.charAt(i) == '\n' || text.charAt(i) == '\r')
+                    indentStart = i + 1;
+            }
+            anchors.add(new Anchor(Kind.MEMBER_INDENT, indentStart, i));
+        }
+        int close = text.lastIndexOf('}');
+        if (close > -1)
+            anchors.add(new Anchor(Kind.CLASS_CLOSE, close, close));
+        int imports = text.indexOf("import ");
+        if (imports > -1)
+            anchors.add(new Anchor(Kind.FIRST_IMPORT, imports, imports));
+        anchors.sort(Comparator.comparingInt(Anchor::start));
+        return new FilePlan(text.length(), anchors);
+    }
+
+    private static void occurrences(String text, String search, Kind kind, int from, int to, List<Anchor> anchors) {
+        int i = text.indexOf(search, from);
+        while (i > -1 && i + search.length() <= to) {
+            anchors.add(new Anchor(kind, i, i + search.length()));
+            i = text.indexOf(search, i + search.length());
+        }
+    }
+
+    /**
+     * Substitute values into a file
+     * @param text The file as it is in the template
+     * @param plan The plan of the file
+     * @param values Replacement of each span kind, spans of other kinds are kept
+     * @return The new text with the new offsets of position anchors
+     */
+    public static Rendered render(CharSequence text, FilePlan plan, Map<Kind, String> values) {
+        StringBuilder sb = new StringBuilder(text.length() + 64);
+        Map<Kind, Integer> positions = new EnumMap<>(Kind.class);
+        int position = 0;
+        for (Anchor anchor : plan.anchors()) {
+            String value = values.get(anchor.kind());
+            if (anchor.start() == anchor.end()) {
+                positions.putIfAbsent(anchor.kind(), sb.length() + anchor.start() - position);
+            } else if (value != null) {
+                sb.append(text, position, anchor.start()).append(value);
+                position = anchor.end();
+            }
+        }
+        sb.append(text, position, text.length());
+        return new Rendered(sb.toString(), positions);
+    }
+
+    private final Map<String, FilePlan> files = new LinkedHashMap<>();
+    private String mainClass;
+
+    /**
+     * @return The template path of the main class, null if the template has none
+     */
+    public String getMainClass() {
+        return mainClass;
+    }
+
+    /**
+     * @param path A template path
+     * @param content The current content of the file
+     * @return The plan of the file, Optional.empty if the file has no plan or has changed since it was planned
+     */
+    public Optional<FilePlan> file(String path, CharSequence content) {
+        FilePlan plan = files.get(path);
+        return plan == null || plan.length() != content.length() ? Optional.empty() : Optional.of(plan);
+    }
+
+    /**
+     * Read a saved plan
+     * @param file The plan file
+     * @return The plan, Optional.empty if there is no plan or it was written by another version
+     */
+    public static Optional<TemplatePlan> read(Path file) throws IOException {
+        if (!Files.isRegularFile(file))
+            return Optional.empty();
+        try (BufferedReader reader = new BufferedReader(new StringReader(Files.readString(file)))) {
+            if (!HEADER.equals(reader.readLine()))
+                return Optional.empty();
+            TemplatePlan plan = new TemplatePlan();
+            String mainClass = reader.readLine();
+            plan.mainClass = mainClass == null || mainClass.isEmpty() ? null : mainClass;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                // path <tab> length <tab> KIND:start-end ...
+                String[] fields = line.split("\t");
+                List<Anchor> anchors = new ArrayList<>();
+                for (int i = 2; i < fields.length; i++) {
+                    int colon = fields[i].indexOf(':');
+                    int dash = fields[i].indexOf('-', colon);
+                    anchors.add(new Anchor(Kind.valueOf(fields[i].substring(0, colon))
+                            , Integer.parseInt(fields[i].substring(colon + 1, dash))
+                            , Integer.parseInt(fields[i].substring(dash + 1))));
+                }
+                plan.files.put(fields[0], new FilePlan(Integer.parseInt(fields[1]), anchors));
+            }
+            return Optional.of(plan);
+        } catch (RuntimeException e) {
+            // unreadable, it is compiled again
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Save the plan, the file is replaced atomically so concurrent readers never see a partial plan
+     * @param file The plan file
+     */
+    public void write(Path file) throws IOException {
+        StringBuilder sb = new StringBuilder(HEADER).append('\n');
+        sb.append(mainClass == null ? "" : mainClass).append('\n');
+        files.forEach((path, plan) -> {
+            sb.append(path).append('\t').append(plan.length());
+            for (Anchor anchor : plan.anchors())
+                sb.append('\t').append(anchor.kind()).append(':').append(anchor.start()).append('-').append(anchor.end());
+            sb.append('\n');
+        });
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), ".plan-", ".tmp");
+        try {
+            FileUtils.writeString(tmp, sb);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.oreto.gungnir.cli.template;
+
+import io.oreto.gungnir.cli.vsc.Git;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+/**
+ * Where the files of a template come from.
+ * Sources stream their working tree entries to a visitor, version control metadata is never included.
+ */
+public interface TemplateSource {
+    /**
+     * Create a source for a template location
+     * @param location A directory, a bare git repository, a file:// url of a repository or directory,
+     *                 a remote git url, or a zip, tar or tar.gz archive
+     * @return The template source
+     */
+    static TemplateSource of(String location) {
+        String lower = location.toLowerCase();
+        if (lower.endsWith(".zip"))
+            return new ArchiveSource(Paths.get(location), ArchiveSource.Format.ZIP);
+        if (lower.endsWith(".tar.gz") || lower.endsWith(".tgz"))
+            return new ArchiveSource(Paths.get(location), ArchiveSource.Format.TAR_GZ);
+        if (lower.endsWith(".tar"))
+            return new ArchiveSource(Paths.get(location), ArchiveSource.Format.TAR);
+        if (Git.isRemote(location))
+            return new GitSource(location);
+        if (location.startsWith("file://")) {
+            Path path = Paths.get(location.substring("file://".length()));
+            Path gitDir = path.resolve(DirectorySource.GIT_DIR);
+            if (GitSource.isGitDir(path))
+                return new GitSource(path.toString());
+            return Files.isDirectory(gitDir) ? new GitSource(gitDir.toString()) : new DirectorySource(path);
+        }
+
+        Path path = Paths.get(location);
+        return GitSource.isGitDir(path) ? new GitSource(path.toString()) : new DirectorySource(path);
+    }
+
+    /**
+     * Stream every entry of the template
+     * @param visitor Receives each entry
+     */
+    void read(EntryVisitor visitor) throws IOException, InterruptedException;
+
+    /**
+     * @return The template revision, Optional.empty if the source is not versioned
+     */
+    default Optional<String> revision() throws IOException, InterruptedException {
+        return Optional.empty();
+    }
+
+    /**
+     * Load the template into a staged tree
+     * @param tree The tree to load into
+     * @param layout Maps each entry path to its staged path, null skips the entry
+     */
+    default void stage(StagedTree tree, UnaryOperator<String> layout) throws IOException, InterruptedException {
+        read((entry, directory, mode, content) -> {
+            String destination = layout.apply(entry);
+            if (destination == null)
+                return;
+            if (directory)
+                tree.mkdirs(destination);
+            else
+                tree.add(destination, content.readAllBytes(), mode);
+        });
+    }
+
+}
@@ -0,0 +1,274 @@
+package io.oreto.gungnir.cli.util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Copies directory trees.
+ * The whole directory structure is created first, then file contents are copied in parallel batches
+ * on the shared {@link Workers} pool using {@link FileChannel#transferTo} so the kernel moves the bytes.
+ * In link mode files are hard linked instead, falling back to a copy where the file system cannot link.
+ */
+public class FileCopier {
+    static final int BATCH_FILES = 64;
+    static final long BATCH_BYTES = 8L * 1024 * 1024;
+
+    /**
+     * Totals of a copy
+     * @param files Number of files materialized
+     * @param directories Number of directories created
+     * @param bytes Number of bytes copied
+     * @param links Number of files hard linked instead of copied
+     */
+    public record Result(long files, long directories, long bytes, long links) {
+    }
+
+    private record Entry(Path source, Path destination, long size, boolean link) {
+    }
+
+    private boolean preserveAttributes;
+    private boolean replaceExisting;
+    private boolean writable;
+    private boolean link;
+    private Predicate<Path> copyOnly = path -> false;
+    private final AtomicBoolean linkable = new AtomicBoolean(true);
+
+    /**
+     * Keep modification times and posix permissions of copied files and directories
+     * @param preserveAttributes True to preserve attributes
+     * @return The FileCopier object
+     */
+    public FileCopier preserveAttributes(boolean preserveAttributes) {
+        this.preserveAttributes = preserveAttributes;
+        return this;
+    }
+
+    /**
+     * Overwrite files which already exist in the destination
+     * @param replaceExisting True to overwrite
+     * @return The FileCopier object
+     */
+    public FileCopier replaceExisting(boolean replaceExisting) {
+        this.replaceExisting = replaceExisting;
+        return this;
+    }
+
+    /**
+     * Keep copies writable by their owner when attributes are preserved, even if the source is read only
+     * @param writable True for writable copies
+     * @return The FileCopier object
+     */
+    public FileCopier writable(boolean writable) {
+        this.writable = writable;
+        return this;
+    }
+
+    /**
+     * Hard link files instead of copying them. Linked files share their contents with the source,
+     * so files which will be modified afterwards must be excluded with {@link #copyOnly(Predicate)}.
+     * @param link True to link
+     * @return The FileCopier object
+     */
+    public FileCopier link(boolean link) {
+        this.link = link;
+        return this;
+    }
+
+    /**
+     * Files which are always copied in link mode
+     * @param copyOnly Tests file paths relative to the source directory
+     * @return The FileCopier object
+     */
+    public FileCopier copyOnly(Predicate<Path> copyOnly) {
+        this.copyOnly = copyOnly;
+        return this;
+    }
+
+    /**
+     * Copy a directory tree
+     * @param sourceDir The directory to copy
+     * @param destinationDir The directory to copy into, created if missing
+     * @return The copy totals
+     */
+    public Result copy(Path sourceDir, Path destinationDir) throws IOException {
+        List<Entry> files = new ArrayList<>();
+        List<Entry> directories = new ArrayList<>();
+        Files.walkFileTree(sourceDir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Path destination = resolve(sourceDir, dir, destinationDir);
+                Files.createDirectories(destination);
+                directories.add(new Entry(dir, destination, 0, false));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                boolean linked = link && !copyOnly.test(sourceDir.relativize(file));
+                files.add(new Entry(file, resolve(sourceDir, file, destinationDir), attrs.size(), linked));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return transfer(files, directories);
+    }
+
+    /**
+     * Copy selected files to arbitrary destinations, creating missing parent directories.
+     * A source may be copied to several destinations.
+     * @param sourceDir The directory the files belong to, copyOnly is tested relative to it,
+     *                  null to test the source paths as they are
+     * @param files Maps destination files to their source files
+     * @return The copy totals
+     */
+    public Result copyFiles(Path sourceDir, Map<Path, Path> files) throws IOException {
+        List<Entry> entries = new ArrayList<>(files.size());
+        Set<Path> parents = new LinkedHashSet<>();
+        for (Map.Entry<Path, Path> file : files.entrySet()) {
+            Path destination = file.getKey();
+            Path source = file.getValue();
+            boolean linked = link && !copyOnly.test(sourceDir == null ? source : sourceDir.relativize(source));
+            entries.add(new Entry(source, destination, Files.size(source), linked));
+            if (destination.getParent() != null)
+                parents.add(destination.getParent());
+        }
+        for (Path parent : parents)
+            Files.createDirectories(parent);
+        return transfer(entries, List.of());
+    }
+
+    private Result transfer(List<Entry> files, List<Entry> directories) throws IOException {
+        AtomicLong bytes = new AtomicLong();
+        AtomicLong links = new AtomicLong();
+        List<Workers.Task<Void>> tasks = new ArrayList<>();
+        List<Entry> batch = new ArrayList<>();
+        long batchBytes = 0;
+        for (Entry file : files) {
+            batch.add(file);
+            if (!file.link())
+                batchBytes += file.size();
+            if (batch.size() >= BATCH_FILES || batchBytes >= BATCH_BYTES) {
+                tasks.add(copyTask(batch, bytes, links));
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+        }
+        if (!batch.isEmpty())
+            tasks.add(copyTask(batch, bytes, links));
+        Workers.all(tasks);
+
+        if (preserveAttributes) {
+            // children are done, so directory times are not disturbed anymore
+            for (int i = directories.size() - 1; i >= 0; i--)
+                copyAttributes(directories.get(i).source(), directories.get(i).destination(), false);
+        }
+        return new Result(files.size(), directories.size(), bytes.get(), links.get());
+    }
+
+    private Workers.Task<Void> copyTask(List<Entry> batch, AtomicLong bytes, AtomicLong links) {
+        return () -> {
+            for (Entry file : batch) {
+                if (file.link() && linkFile(file.source(), file.destination()))
+                    links.incrementAndGet();
+                else
+                    bytes.addAndGet(copyFile(file.source(), file.destination()));
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Hard link one file. Once the file system refuses a link, later calls return false right away.
+     * A missing source or an existing destination fails a copy all the same, so they are thrown.
+     * @param source The existing file
+     * @param destination The link to create
+     * @return True if the link was created, false if the file has to be copied instead
+     */
+    public boolean linkFile(Path source, Path destination) throws IOException {
+        if (!linkable.get() || Files.isSymbolicLink(source))
+            return false;
+        try {
+            if (replaceExisting)
+                Files.deleteIfExists(destination);
+            Files.createLink(destination, source);
+            return true;
+        } catch (NoSuchFileException | FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // different devices, no link support, not permitted or too many links, copying works everywhere
+            linkable.set(false);
+            return false;
+        }
+    }
+
+    /**
+     * Copy one file with a zero copy channel transfer
+     * @param source The file to copy
+     * @param destination The file to create
+     * @return Number of bytes copied
+     */
+    public long copyFile(Path source, Path destination) throws IOException {
+        if (Files.isSymbolicLink(source)) {
+            if (replaceExisting)
+                Files.deleteIfExists(destination);
+            Files.createSymbolicLink(destination, Files.readSymbolicLink(source));
+            return 0;
+        }
+        StandardOpenOption create = replaceExisting ? StandardOpenOption.CREATE : StandardOpenOption.CREATE_NEW;
+        long copied = 0;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(destination
+                     , StandardOpenOption.WRITE, create, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            while (copied < size) {
+                long transferred = in.transferTo(copied, size - copied, out);
+                if (transferred <= 0)
+                    break;
+                copied += transferred;
+            }
+        }
+        if (preserveAttributes)
+            copyAttributes(source, destination, writable);
+        return copied;
+    }
+
+    private static void copyAttributes(Path source, Path destination, boolean writable) throws IOException {
+        PosixFileAttributeView posix = Files.getFileAttributeView(destination, PosixFileAttributeView.class);
+        if (posix != null) {
+            PosixFileAttributes attributes = Files.readAttributes(source, PosixFileAttributes.class);
+            Set<PosixFilePermission> permissions = attributes.permissions();
+            if (writable)
+                permissions.add(PosixFilePermission.OWNER_WRITE);
+            posix.setPermissions(permissions);
+            posix.setTimes(attributes.lastModifiedTime(), null, null);
+        } else {
+            FileTime modified = Files.getLastModifiedTime(source);
+            Files.setLastModifiedTime(destination, modified);
+        }
+    }
+
+    private static Path resolve(Path sourceDir, Path source, Path destinationDir) {
+        Path relative = sourceDir.relativize(source);
+        Path destination = destinationDir;
+        for (Path name : relative) {
+            // resolve name by name so trees can be copied between file systems
+            if (!name.toString().isEmpty())
+                destination = destination.resolve(name.toString());
+        }
+        return destination;
+    }
+}
@@ -0,0 +1,202 @@
+package io.oreto.gungnir.cli.util;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Deletes directory trees.
+ * Sibling subtrees near the top of the tree are deleted in parallel on the shared {@link Workers} pool,
+ * deeper levels are walked with {@link Files#walkFileTree}. Deletion carries on past failures and
+ * reports all of them at the end in one {@link DeleteException}.
+ * Background deletions are never waited for on exit, whatever a process leaves behind is swept by a later one.
+ */
+public class FileDeleter {
+    static final int PARALLEL_DEPTH = 2;
+    static final String TRASH_INFIX = ".deleted-";
+
+    /**
+     * Thrown when some paths of a tree could not be deleted, every failure is attached as suppressed
+     */
+    public static class DeleteException extends IOException {
+        private final List<IOException> failures;
+
+        DeleteException(Path directory, List<IOException> failures) {
+            super(String.format("unable to delete %d path(s) under %s, first: %s"
+                    , failures.size(), directory, failures.get(0).getMessage()));
+            this.failures = List.copyOf(failures);
+            failures.forEach(this::addSuppressed);
+        }
+
+        public List<IOException> getFailures() {
+            return failures;
+        }
+    }
+
+    /**
+     * Delete a directory tree, or a single file
+     * @param directory The directory to delete, nothing happens if it does not exist
+     * @throws DeleteException if anything could not be deleted
+     */
+    public static void delete(Path directory) throws IOException {
+        if (Files.notExists(directory, LinkOption.NOFOLLOW_LINKS))
+            return;
+        Queue<IOException> failures = new ConcurrentLinkedQueue<>();
+        deleteTree(directory, 0, failures);
+        if (!failures.isEmpty())
+            throw new DeleteException(directory, new ArrayList<>(failures));
+    }
+
+    /**
+     * Move a directory out of the way right away and delete it in the background.
+     * If it cannot be renamed it is deleted before this method returns.
+     * If the process exits before the deletion is done, the rest is left for {@link #sweep(Path, String)}.
+     * @param directory The directory to delete
+     * @return Completes when the background deletion is done
+     */
+    public static CompletableFuture<Void> deleteAsync(Path directory) throws IOException {
+        if (Files.notExists(directory, LinkOption.NOFOLLOW_LINKS))
+            return CompletableFuture.completedFuture(null);
+        Path trash = trashPath(directory);
+        try {
+            Files.move(directory, trash, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileSystemException e) {
+            // no atomic rename here (another device, a locked file), delete in place
+            delete(directory);
+            return CompletableFuture.completedFuture(null);
+        }
+        return reclaim(trash);
+    }
+
+    /**
+     * Delete a directory which has already been moved out of the way in the background
+     * @param trash The directory to delete, usually a {@link #trashPath(Path)}
+     * @return Completes when the background deletion is done
+     */
+    public static CompletableFuture<Void> reclaim(Path trash) {
+        return Workers.submit(() -> {
+            delete(trash);
+            return null;
+        });
+    }
+
+    /**
+     * Delete in the background what earlier runs moved aside but did not finish deleting.
+     * Sweeping is best effort, a directory which can not be listed is left alone.
+     * @param parent The directory which holds the trash
+     * @param name The name of the deleted directory, null for the trash of every directory
+     * @return The number of trash directories found
+     */
+    public static int sweep(Path parent, String name) {
+        String prefix = name == null ? "." : String.format(".%s%s", name, TRASH_INFIX);
+        int swept = 0;
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(parent
+                , child -> child.getFileName().toString().startsWith(prefix)
+                        && child.getFileName().toString().contains(TRASH_INFIX))) {
+            for (Path trash : children) {
+                reclaim(trash);
+                swept++;
+            }
+        } catch (IOException e) {
+            // nothing to sweep, or not readable, the next run tries again
+        }
+        return swept;
+    }
+
+    /**
+     * @param directory A directory to delete
+     * @return A hidden sibling path to move the directory to before deleting it
+     */
+    public static Path trashPath(Path directory) {
+        Path absolute = directory.toAbsolutePath();
+        String name = absolute.getFileName() == null ? "root" : absolute.getFileName().toString();
+        return absolute.resolveSibling(String.format(".%s%s%s", name, TRASH_INFIX, UUID.randomUUID()));
+    }
+
+    private static void deleteTree(Path directory, int depth, Queue<IOException> failures) {
+        if (depth >= PARALLEL_DEPTH || !Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+            walkDelete(directory, failures);
+            return;
+        }
+        List<CompletableFuture<Void>> subtrees = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+            for (Path child : children) {
+                if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    subtrees.add(Workers.submit(() -> {
+                        deleteTree(child, depth + 1, failures);
+                        return null;
+                    }));
+                } else {
+                    deletePath(child, failures);
+                }
+            }
+        } catch (IOException e) {
+            failures.add(e);
+        }
+        for (CompletableFuture<Void> subtree : subtrees) {
+            try {
+                subtree.join();
+            } catch (RuntimeException e) {
+                Throwable cause = Workers.unwrap(e);
+                failures.add(cause instanceof IOException io ? io : new IOException(cause));
+            }
+        }
+        deletePath(directory, failures);
+    }
+
+    private static void walkDelete(Path root, Queue<IOException> failures) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    deletePath(file, failures);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    failures.add(e);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    if (e != null)
+                        failures.add(e);
+                    deletePath(dir, failures);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            failures.add(e);
+        }
+    }
+
+    private static void deletePath(Path path, Queue<IOException> failures) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (AccessDeniedException e) {
+            // read only files cannot be deleted on windows
+            DosFileAttributeView dos = Files.getFileAttributeView(path, DosFileAttributeView.class
+                    , LinkOption.NOFOLLOW_LINKS);
+            try {
+                if (dos == null)
+                    throw e;
+                dos.setReadOnly(false);
+                Files.deleteIfExists(path);
+            } catch (IOException retry) {
+                failures.add(retry);
+            }
+        } catch (DirectoryNotEmptyException e) {
+            // a parent of a path which already failed adds nothing to the report
+            if (failures.isEmpty())
+                failures.add(e);
+        } catch (IOException e) {
+            failures.add(e);
+        }
+    }
+}
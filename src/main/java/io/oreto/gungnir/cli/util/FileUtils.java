@@ -1,50 +1,58 @@
 package io.oreto.gungnir.cli.util;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
 
 public class FileUtils {
 
-    public static void copyDirectory(Path sourceDir, Path destinationDir)
+    public static FileCopier.Result copyDirectory(Path sourceDir, Path destinationDir)
             throws IOException {
-        int len = sourceDir.toString().length();
-        try(Stream<Path> pathStream = Files.walk(sourceDir)) {
-            for (Path source : pathStream.toList()) {
-                Path destination = Paths.get(destinationDir.toString(), source.toString().substring(len));
-                Files.copy(source, destination);
-            }
-        }
+        return new FileCopier().copy(sourceDir, destinationDir);
     }
 
-    public static void packageDirectory(Path srcDirectory) throws IOException {
-        String src = srcDirectory.toString();
-        try(Stream<Path> pathStream = Files.walk(srcDirectory)) {
-            for (Path source : pathStream.toList()) {
-                if (Files.isRegularFile(source) && source.toString().endsWith(".java")) {
-                    Str str = Str.of(Files.readString(source));
-                    String packageName = Arrays.stream(source.getParent().toString().replace(src, "")
-                            .split("[\\\\/]"))
-                            .filter(it -> !it.isEmpty())
-                            .collect(Collectors.joining("."));
-                    str.replaceFrom("package ", ";", false, "package " + packageName);
-                    Files.write(source, str.getBytes());
-                }
-            }
+    /**
+     * Materialize a directory tree by hard linking its files, copying where linking is not possible
+     * @param sourceDir The directory to link from
+     * @param destinationDir The directory to create
+     * @param copyOnly Files relative to sourceDir which must be real copies because they will be modified
+     * @return The copy totals
+     */
+    public static FileCopier.Result linkDirectory(Path sourceDir, Path destinationDir, Predicate<Path> copyOnly)
+            throws IOException {
+        return new FileCopier().link(true).copyOnly(copyOnly).copy(sourceDir, destinationDir);
+    }
+
+    /**
+     * Write text to a file as UTF-8, replacing its content
+     * @param file The file to write
+     * @param content The text to write
+     * @return The number of bytes written
+     */
+    public static long writeString(Path file, CharSequence content) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE
+                , StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return Str.writeTo(content, out);
         }
     }
 
+    public static int packageDirectory(Path srcDirectory) throws IOException {
+        return PackageRewriter.rewrite(srcDirectory);
+    }
+
     public static void deleteDirectory(Path directory) throws IOException {
-        try(Stream<Path> stream = Files.walk(directory)) {
-            stream.sorted(Comparator.reverseOrder())
-                    .map(Path::toFile)
-                    .forEach(File::delete);
-        }
+        FileDeleter.delete(directory);
+    }
+
+    /**
+     * Rename a directory aside and delete it in the background, see {@link FileDeleter#deleteAsync(Path)}
+     * @param directory The directory to delete
+     * @return Completes when the directory is gone
+     */
+    public static CompletableFuture<Void> deleteDirectoryAsync(Path directory) throws IOException {
+        return FileDeleter.deleteAsync(directory);
     }
 }
@@ -0,0 +1,205 @@
+package io.oreto.gungnir.cli.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON parser for cli input files.
+ * Objects become LinkedHashMap, arrays become ArrayList, numbers become Long or Double,
+ * strings, booleans and null map to their java equivalents.
+ */
+public class JsonReader {
+    /**
+     * Thrown for malformed JSON, the message includes line and column of the problem
+     */
+    public static class ParseException extends IOException {
+        ParseException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Parse a JSON file
+     * @param file The file to read
+     * @return The parsed value
+     */
+    public static Object read(Path file) throws IOException {
+        return parse(Files.readString(file));
+    }
+
+    /**
+     * Parse a JSON document
+     * @param json The document
+     * @return The parsed value
+     */
+    public static Object parse(CharSequence json) throws ParseException {
+        JsonReader reader = new JsonReader(json);
+        Object value = reader.value();
+        reader.skipWhitespace();
+        if (reader.i < json.length())
+            throw reader.error("unexpected content after the document");
+        return value;
+    }
+
+    private final CharSequence json;
+    private int i;
+
+    private JsonReader(CharSequence json) {
+        this.json = json;
+    }
+
+    private Object value() throws ParseException {
+        skipWhitespace();
+        if (i >= json.length())
+            throw error("unexpected end of input");
+        char c = json.charAt(i);
+        if (c == '-' || (c >= '0' && c <= '9'))
+            return number();
+        return switch (c) {
+            case '{' -> object();
+            case '[' -> array();
+            case '"' -> string();
+            case 't' -> literal("true", Boolean.TRUE);
+            case 'f' -> literal("false", Boolean.FALSE);
+            case 'n' -> literal("null", null);
+            default -> throw error(String.format("unexpected character '%c'", c));
+        };
+    }
+
+    private Map<String, Object> object() throws ParseException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        i++;
+        skipWhitespace();
+        if (peek('}'))
+            return map;
+        while (true) {
+            skipWhitespace();
+            if (i >= json.length() || json.charAt(i) != '"')
+                throw error("expected a property name");
+            String name = string();
+            skipWhitespace();
+            expect(':');
+            map.put(name, value());
+            skipWhitespace();
+            if (peek('}'))
+                return map;
+            expect(',');
+        }
+    }
+
+    private List<Object> array() throws ParseException {
+        List<Object> list = new ArrayList<>();
+        i++;
+        skipWhitespace();
+        if (peek(']'))
+            return list;
+        while (true) {
+            list.add(value());
+            skipWhitespace();
+            if (peek(']'))
+                return list;
+            expect(',');
+        }
+    }
+
+    private String string() throws ParseException {
+        StringBuilder sb = new StringBuilder();
+        i++;
+        while (i < json.length()) {
+            char c = json.charAt(i++);
+            if (c == '"')
+                return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (i >= json.length())
+                break;
+            char escaped = json.charAt(i++);
+            switch (escaped) {
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'u' -> {
+                    if (i + 4 > json.length())
+                        throw error("incomplete unicode escape");
+                    try {
+                        sb.append((char) Integer.parseInt(json.subSequence(i, i + 4).toString(), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("invalid unicode escape");
+                    }
+                    i += 4;
+                }
+                default -> sb.append(escaped);
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    private Number number() throws ParseException {
+        int start = i;
+        boolean decimal = false;
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c == '.' || c == 'e' || c == 'E')
+                decimal = true;
+            else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9')))
+                break;
+            i++;
+        }
+        String number = json.subSequence(start, i).toString();
+        try {
+            return decimal ? (Number) Double.parseDouble(number) : (Number) Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            i = start;
+            throw error(String.format("invalid number %s", number));
+        }
+    }
+
+    private Object literal(String literal, Object value) throws ParseException {
+        if (i + literal.length() > json.length()
+                || !json.subSequence(i, i + literal.length()).toString().equals(literal))
+            throw error("unexpected literal");
+        i += literal.length();
+        return value;
+    }
+
+    private boolean peek(char c) {
+        if (i < json.length() && json.charAt(i) == c) {
+            i++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) throws ParseException {
+        if (!peek(c))
+            throw error(String.format("expected '%c'", c));
+    }
+
+    private void skipWhitespace() {
+        while (i < json.length() && Character.isWhitespace(json.charAt(i)))
+            i++;
+    }
+
+    private ParseException error(String message) {
+        int line = 1;
+        int column = 1;
+        for (int j = 0; j < i && j < json.length(); j++) {
+            if (json.charAt(j) == '\n') {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+        }
+        return new ParseException(String.format("%s at line %d, column %d", message, line, column));
+    }
+}
@@ -0,0 +1,126 @@
+package io.oreto.gungnir.cli.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Line based diff in unified format, for previews of changes to small text files.
+ * The common head and tail are skipped first, the changed middle is compared with a longest common subsequence,
+ * so the cost follows the size of the change.
+ */
+public class LineDiff {
+    static final int CONTEXT = 3;
+
+    private record Line(char op, String text, int before, int after) {
+    }
+
+    /**
+     * @param path The file path shown in the headers
+     * @param before The old text, null for a new file
+     * @param after The new text, null for a deleted file
+     * @return The unified diff, empty if the texts are the same
+     */
+    public static String unified(String path, String before, String after) {
+        String[] a = lines(before);
+        String[] b = lines(after);
+        List<Line> script = script(a, b);
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < script.size()) {
+            if (script.get(i).op() == ' ') {
+                i++;
+                continue;
+            }
+            // a hunk runs from the context before a change to the context after the last change close to it
+            int start = Math.max(0, i - CONTEXT);
+            int last = i;
+            for (int k = i; k < script.size() && k - last <= 2 * CONTEXT; k++) {
+                if (script.get(k).op() != ' ')
+                    last = k;
+            }
+            int end = Math.min(script.size(), last + 1 + CONTEXT);
+            if (sb.isEmpty())
+                sb.append(String.format("--- %s%n+++ %s%n"
+                        , before == null ? "/dev/null" : "a/" + path
+                        , after == null ? "/dev/null" : "b/" + path));
+            hunk(sb, script.subList(start, end));
+            i = end;
+        }
+        return sb.toString();
+    }
+
+    private static void hunk(StringBuilder sb, List<Line> lines) {
+        int beforeStart = 0;
+        int afterStart = 0;
+        int beforeCount = 0;
+        int afterCount = 0;
+        for (Line line : lines) {
+            if (line.op() != '+') {
+                if (beforeCount++ == 0)
+                    beforeStart = line.before();
+            }
+            if (line.op() != '-') {
+                if (afterCount++ == 0)
+                    afterStart = line.after();
+            }
+        }
+        sb.append(String.format("@@ -%d,%d +%d,%d @@%n", beforeCount == 0 ? lines.get(0).before() - 1 : beforeStart
+                , beforeCount, afterCount == 0 ? lines.get(0).after() - 1 : afterStart, afterCount));
+        for (Line line : lines)
+            sb.append(line.op()).append(line.text()).append(System.lineSeparator());
+    }
+
+    /**
+     * @return Every line of both texts as kept, removed or added, with its 1 based line numbers
+     */
+    private static List<Line> script(String[] a, String[] b) {
+        int head = 0;
+        while (head < a.length && head < b.length && a[head].equals(b[head]))
+            head++;
+        int tail = 0;
+        while (tail < a.length - head && tail < b.length - head
+                && a[a.length - 1 - tail].equals(b[b.length - 1 - tail]))
+            tail++;
+
+        int n = a.length - head - tail;
+        int m = b.length - head - tail;
+        // lcs[i][j] is the length of the longest common subsequence of the middles from i and j on
+        int[][] lcs = new int[n + 1][m + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                lcs[i][j] = a[head + i].equals(b[head + j])
+                        ? lcs[i + 1][j + 1] + 1
+                        : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+            }
+        }
+
+        List<Line> script = new ArrayList<>(a.length + m);
+        for (int k = 0; k < head; k++)
+            script.add(new Line(' ', a[k], k + 1, k + 1));
+        int i = 0;
+        int j = 0;
+        while (i < n || j < m) {
+            if (i < n && j < m && a[head + i].equals(b[head + j])) {
+                script.add(new Line(' ', a[head + i], head + i + 1, head + j + 1));
+                i++;
+                j++;
+            } else if (i < n && (j == m || lcs[i + 1][j] >= lcs[i][j + 1])) {
+                script.add(new Line('-', a[head + i], head + i + 1, head + j + 1));
+                i++;
+            } else {
+                script.add(new Line('+', b[head + j], head + i + 1, head + j + 1));
+                j++;
+            }
+        }
+        for (int k = tail; k > 0; k--)
+            script.add(new Line(' ', a[a.length - k], a.length - k + 1, b.length - k + 1));
+        return script;
+    }
+
+    private static String[] lines(String text) {
+        if (text == null || text.isEmpty())
+            return new String[0];
+        // a final line break ends the last line, it does not start another one
+        return text.split("\r?\n");
+    }
+}
@@ -0,0 +1,197 @@
+package io.oreto.gungnir.cli.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rewrites java package declarations so they match the directory each source file lives in.
+ * Only the head of each file is read to find the declaration, files which already declare the right package
+ * are left untouched, the others are patched with a streamed copy: new head plus the unchanged tail.
+ * Files are processed in parallel batches on the shared {@link Workers} pool.
+ */
+public class PackageRewriter {
+    static final String JAVA_EXTENSION = ".java";
+    static final byte[] PACKAGE = "package".getBytes(StandardCharsets.US_ASCII);
+    static final int HEAD_SIZE = 4 * 1024;
+    static final int MAX_HEAD_SIZE = 256 * 1024;
+    static final int BATCH_FILES = 32;
+
+    private record Source(Path path, String packageName) {
+    }
+
+    /**
+     * Rewrite the package declaration of every java file under a source root
+     * @param srcDirectory The source root, such as src/main/java
+     * @return The number of files which were rewritten
+     */
+    public static int rewrite(Path srcDirectory) throws IOException {
+        List<Source> sources = new ArrayList<>();
+        Files.walkFileTree(srcDirectory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && file.getFileName().toString().endsWith(JAVA_EXTENSION)) {
+                    Path relative = srcDirectory.relativize(file).getParent();
+                    if (relative != null)
+                        sources.add(new Source(file, packageName(relative)));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        List<Workers.Task<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i += BATCH_FILES) {
+            List<Source> batch = sources.subList(i, Math.min(i + BATCH_FILES, sources.size()));
+            tasks.add(() -> {
+                int rewritten = 0;
+                for (Source source : batch) {
+                    if (rewrite(source.path(), source.packageName()))
+                        rewritten++;
+                }
+                return rewritten;
+            });
+        }
+        return Workers.all(tasks).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Rewrite the package declaration of one file
+     * @param file The java source file
+     * @param packageName The package it should declare
+     * @return True if the file was rewritten, false if it already declares the package or has no declaration
+     */
+    public static boolean rewrite(Path file, String packageName) throws IOException {
+        byte[] expected = packageName.getBytes(StandardCharsets.UTF_8);
+        Path tmp;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(size, HEAD_SIZE));
+            int[] name;
+            while (true) {
+                while (head.hasRemaining() && in.read(head) > 0) ;
+                name = locate(head.array(), head.position());
+                // a declaration cut off by the end of the head needs a bigger head
+                if (name == null || name[1] >= 0 || head.position() >= size || head.capacity() >= MAX_HEAD_SIZE)
+                    break;
+                head = ByteBuffer.allocate((int) Math.min(size, head.capacity() * 4L)).put(head.flip());
+            }
+            if (name == null || name[1] < 0)
+                return false;
+            byte[] bytes = head.array();
+            if (Arrays.equals(bytes, name[0], name[1], expected, 0, expected.length))
+                return false;
+
+            tmp = Files.createTempFile(file.getParent(), ".package-", ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                out.write(ByteBuffer.wrap(bytes, 0, name[0]));
+                out.write(ByteBuffer.wrap(expected));
+                out.write(ByteBuffer.wrap(bytes, name[1], head.position() - name[1]));
+                long position = head.position();
+                while (position < size) {
+                    long transferred = in.transferTo(position, size - position, out);
+                    if (transferred <= 0)
+                        break;
+                    position += transferred;
+                }
+                // temporary files are created owner only, the rewritten file keeps the permissions it had
+                if (tmp.getFileSystem().supportedFileAttributeViews().contains("posix"))
+                    Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(file));
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Rewrite the package declaration of java source held in memory
+     * @param content The java source as UTF-8
+     * @param packageName The package it should declare
+     * @return The rewritten source, the same array if nothing had to change
+     */
+    public static byte[] rewrite(byte[] content, String packageName) {
+        int[] name = locate(content, content.length);
+        if (name == null || name[1] < 0)
+            return content;
+        byte[] expected = packageName.getBytes(StandardCharsets.UTF_8);
+        if (Arrays.equals(content, name[0], name[1], expected, 0, expected.length))
+            return content;
+        byte[] result = new byte[content.length - (name[1] - name[0]) + expected.length];
+        System.arraycopy(content, 0, result, 0, name[0]);
+        System.arraycopy(expected, 0, result, name[0], expected.length);
+        System.arraycopy(content, name[1], result, name[0] + expected.length, content.length - name[1]);
+        return result;
+    }
+
+    /**
+     * @param relative A directory relative to the source root
+     * @return The package name for files in that directory
+     */
+    public static String packageName(Path relative) {
+        StringBuilder sb = new StringBuilder();
+        for (Path name : relative) {
+            if (sb.length() > 0)
+                sb.append(Str.Chars.DECIMAL);
+            sb.append(name);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Find the package name of the declaration, skipping leading whitespace and comments.
+     * @param bytes The head of a source file
+     * @param length Number of valid bytes
+     * @return [start, end) of the package name, end is -1 if the declaration is not complete within length,
+     *          null if the file does not start with a package declaration
+     */
+    static int[] locate(byte[] bytes, int length) {
+        int i = 0;
+        while (i < length) {
+            byte b = bytes[i];
+            if (b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f') {
+                i++;
+            } else if (b == '/' && i + 1 < length && bytes[i + 1] == '/') {
+                while (i < length && bytes[i] != '\n')
+                    i++;
+            } else if (b == '/' && i + 1 < length && bytes[i + 1] == '*') {
+                i += 2;
+                while (i + 1 < length && !(bytes[i] == '*' && bytes[i + 1] == '/'))
+                    i++;
+                i += 2;
+            } else if (b == '@') {
+                // package annotations only appear in package-info.java
+                return null;
+            } else if (b == (byte) 0xEF && i + 2 < length && bytes[i + 1] == (byte) 0xBB && bytes[i + 2] == (byte) 0xBF) {
+                i += 3;
+            } else {
+                break;
+            }
+        }
+        if (i >= length)
+            return new int[] { 0, -1 };
+        if (!Arrays.equals(bytes, i, Math.min(i + PACKAGE.length, length), PACKAGE, 0, PACKAGE.length))
+            return i + PACKAGE.length > length ? new int[] { 0, -1 } : null;
+        i += PACKAGE.length;
+        if (i < length && !Character.isWhitespace(bytes[i]))
+            return null;
+        while (i < length && Character.isWhitespace(bytes[i]))
+            i++;
+        int start = i;
+        while (i < length && bytes[i] != ';')
+            i++;
+        if (i >= length)
+            return new int[] { start, -1 };
+        int end = i;
+        while (end > start && Character.isWhitespace(bytes[end - 1]))
+            end--;
+        return new int[] { start, end };
+    }
+}
@@ -0,0 +1,452 @@
+package io.oreto.gungnir.cli.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Edits a maven pom in a single pass over its text.
+ * The pom is scanned once to collect edits, then written once with the edits applied,
+ * everything else (declaration, formatting, comments) is copied through unchanged.
+ */
+public class PomTransformer {
+    static final String PROJECT = "project";
+    static final String DEPENDENCY = "dependency";
+    static final String DEPENDENCIES = "dependencies";
+    static final String DEPENDENCY_MANAGEMENT = "dependencyManagement";
+    static final String VERSION = "version";
+    static final String GROUP_ID = "groupId";
+    static final String ARTIFACT_ID = "artifactId";
+    static final String MAIN_CLASS = "mainClass";
+    static final String FRAGMENT_INDENT = "    ";
+
+    private record Edit(int start, int end, String replacement) {
+    }
+
+    /**
+     * A project dependency as declared in the pom
+     */
+    private record Declared(String groupId, int start, int end) {
+    }
+
+    private static final class Element {
+        final String name;
+        final int start;
+        final int contentStart;
+        String groupId;
+
+        Element(String name, int start, int contentStart) {
+            this.name = name;
+            this.start = start;
+            this.contentStart = contentStart;
+        }
+    }
+
+    private final Set<String> removedGroupIds = new HashSet<>();
+    private final Set<String> removedElements = new HashSet<>();
+    private final Map<String, String> insertions = new HashMap<>();
+    private final Map<String, String> values = new HashMap<>();
+    private final List<Declared> declared = new ArrayList<>();
+    private String addedDependencies;
+    private boolean dependenciesFound;
+    private boolean removeDependencyVersions;
+    private boolean manageDependencies;
+    private String groupId;
+    private String artifactId;
+    private String mainClass;
+
+    /**
+     * Remove every dependency of a group, wherever it is declared
+     * @param groupId The dependency groupId
+     * @return The PomTransformer object
+     */
+    public PomTransformer removeDependencies(String groupId) {
+        removedGroupIds.add(groupId);
+        return this;
+    }
+
+    /**
+     * @param groupId The new project groupId
+     * @return The PomTransformer object
+     */
+    public PomTransformer groupId(String groupId) {
+        this.groupId = groupId;
+        return this;
+    }
+
+    /**
+     * @param artifactId The new project artifactId
+     * @return The PomTransformer object
+     */
+    public PomTransformer artifactId(String artifactId) {
+        this.artifactId = artifactId;
+        return this;
+    }
+
+    /**
+     * @param mainClass The new value of every mainClass element
+     * @return The PomTransformer object
+     */
+    public PomTransformer mainClass(String mainClass) {
+        this.mainClass = mainClass;
+        return this;
+    }
+
+    /**
+     * Remove every project level element of a name, such as build or properties
+     * @param name The element name
+     * @return The PomTransformer object
+     */
+    public PomTransformer removeElement(String name) {
+        removedElements.add(name);
+        return this;
+    }
+
+    /**
+     * Insert elements after a project level element.
+     * The fragment is indented with 4 spaces per level, it is indented like the pom around it
+     * @param element The name of the element to insert after
+     * @param fragment The elements, one per line, an empty line stays empty
+     * @return The PomTransformer object
+     */
+    public PomTransformer insertAfter(String element, String fragment) {
+        insertions.put(element, fragment);
+        return this;
+    }
+
+    /**
+     * Remove the version of every project dependency, for a module whose parent manages them
+     * @return The PomTransformer object
+     */
+    public PomTransformer removeDependencyVersions() {
+        this.removeDependencyVersions = true;
+        return this;
+    }
+
+    /**
+     * Move the project dependencies into dependencyManagement, for a parent whose modules declare them
+     * @return The PomTransformer object
+     */
+    public PomTransformer manageDependencies() {
+        this.manageDependencies = true;
+        return this;
+    }
+
+    /**
+     * Add dependencies to the project dependencies, after the ones already declared
+     * @param fragment Dependency elements indented with 4 spaces per level, as {@link #dependencies(String, Set)} returns
+     * @return The PomTransformer object
+     */
+    public PomTransformer addDependencies(String fragment) {
+        this.addedDependencies = fragment;
+        return this;
+    }
+
+    /**
+     * @param pom The pom
+     * @return The groupIds of the project dependencies in declaration order
+     */
+    public static Set<String> dependencyGroupIds(String pom) throws IOException {
+        PomTransformer reader = new PomTransformer();
+        reader.scan(pom, new ArrayList<>());
+        Set<String> groupIds = new LinkedHashSet<>();
+        for (Declared dependency : reader.declared)
+            groupIds.add(dependency.groupId());
+        return groupIds;
+    }
+
+    /**
+     * Copy project dependencies out of a pom
+     * @param pom The pom
+     * @param groupIds The groupIds of the dependencies to copy
+     * @return The dependency elements as a fragment, empty if there are none
+     */
+    public static String dependencies(String pom, Set<String> groupIds) throws IOException {
+        PomTransformer reader = new PomTransformer();
+        reader.scan(pom, new ArrayList<>());
+        StringJoiner fragment = new StringJoiner("\n");
+        for (Declared dependency : reader.declared) {
+            if (!groupIds.contains(dependency.groupId()))
+                continue;
+            String indent = indent(pom, dependency.start());
+            for (String line : pom.substring(dependency.start() - indent.length(), dependency.end()).split("\r?\n"))
+                fragment.add(line.startsWith(indent) ? line.substring(indent.length()) : line.strip());
+        }
+        return fragment.toString();
+    }
+
+    /**
+     * Read the text of a project level element, or of the first mainClass element
+     * @param pom The pom
+     * @param element The element name, such as version
+     * @return The trimmed text, Optional.empty if the pom has no such element
+     */
+    public static Optional<String> read(String pom, String element) throws IOException {
+        PomTransformer reader = new PomTransformer();
+        reader.scan(pom, new ArrayList<>());
+        return Optional.ofNullable(reader.values.get(element));
+    }
+
+    /**
+     * Transform a pom
+     * @param pom The pom as UTF-8
+     * @return The transformed pom as UTF-8
+     */
+    public byte[] transform(byte[] pom) throws IOException {
+        return transform(new String(pom, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Transform a pom
+     * @param pom The pom
+     * @return The transformed pom
+     */
+    public String transform(String pom) throws IOException {
+        // indents hold ranges whose lines move one level deeper, the replacement is the indentation added
+        List<Edit> indents = new ArrayList<>();
+        List<Edit> edits = scan(pom, indents);
+        StringBuilder sb = new StringBuilder(pom.length());
+        int position = 0;
+        for (Edit edit : edits) {
+            // edits inside a removed dependency are already gone
+            if (edit.start() < position)
+                continue;
+            append(sb, pom, position, edit.start(), indents).append(edit.replacement());
+            position = edit.end();
+        }
+        return append(sb, pom, position, pom.length(), indents).toString();
+    }
+
+    private static StringBuilder append(StringBuilder sb, String pom, int start, int end, List<Edit> indents) {
+        for (Edit indent : indents) {
+            if (indent.end() <= start || indent.start() >= end)
+                continue;
+            for (int i = start; i < end; i++) {
+                char c = pom.charAt(i);
+                sb.append(c);
+                if (c == '\n' && i >= indent.start() && i < indent.end() && i + 1 < pom.length()
+                        && pom.charAt(i + 1) != '\n' && pom.charAt(i + 1) != '\r')
+                    sb.append(indent.replacement());
+            }
+            return sb;
+        }
+        return sb.append(pom, start, end);
+    }
+
+    private List<Edit> scan(String pom, List<Edit> indents) throws IOException {
+        List<Edit> edits = new ArrayList<>();
+        Deque<Element> open = new ArrayDeque<>();
+        int i = 0;
+        int length = pom.length();
+        while ((i = pom.indexOf('<', i)) >= 0) {
+            if (pom.startsWith("<!--", i)) {
+                i = skip(pom, i, "-->");
+            } else if (pom.startsWith("<![CDATA[", i)) {
+                i = skip(pom, i, "]]>");
+            } else if (pom.startsWith("<?", i)) {
+                i = skip(pom, i, "?>");
+            } else if (pom.startsWith("<!", i)) {
+                i = skip(pom, i, ">");
+            } else if (pom.startsWith("</", i)) {
+                int end = skip(pom, i, ">");
+                Element element = open.poll();
+                if (element == null || !element.name.equals(localName(pom, i + 2, end - 1)))
+                    throw error(pom, i, "unexpected closing tag");
+                close(pom, element, i, end, open.peek(), open.size(), edits, indents);
+                i = end;
+            } else {
+                int end = tagEnd(pom, i);
+                String name = localName(pom, i + 1, end - 1);
+                if (pom.charAt(end - 2) != '/')
+                    open.push(new Element(name, i, end));
+                i = end;
+            }
+        }
+        if (!open.isEmpty())
+            throw error(pom, length, String.format("unclosed element %s", open.peek().name));
+        if (addedDependencies != null && !dependenciesFound)
+            throw error(pom, length, "no dependencies element to add to");
+        edits.sort(Comparator.comparingInt(Edit::start));
+        return edits;
+    }
+
+    private void close(String pom, Element element, int closeStart, int closeEnd, Element parent, int depth
+            , List<Edit> edits, List<Edit> indents) {
+        String name = element.name;
+        if (depth == 2 && name.equals(DEPENDENCY) && parent.name.equals(DEPENDENCIES))
+            declared.add(new Declared(element.groupId, element.start, closeEnd));
+        if (parent != null && name.equals(GROUP_ID) && parent.name.equals(DEPENDENCY)) {
+            parent.groupId = pom.substring(element.contentStart, closeStart).trim();
+        } else if (name.equals(DEPENDENCY) && removedGroupIds.contains(element.groupId)) {
+            edits.add(removal(pom, element.start, closeEnd, false));
+        } else if (depth == 3 && name.equals(VERSION) && parent.name.equals(DEPENDENCY)) {
+            // project > dependencies > dependency > version, versions in dependencyManagement are one level deeper
+            if (removeDependencyVersions)
+                edits.add(removal(pom, element.start, closeEnd, false));
+        } else if (depth == 1 && parent.name.equals(PROJECT)) {
+            values.put(name, pom.substring(element.contentStart, closeStart).trim());
+            String indent = indent(pom, element.start);
+            String unit = indent.isEmpty() ? FRAGMENT_INDENT : indent;
+            String newline = pom.contains("\r\n") ? "\r\n" : "\n";
+            if (name.equals(DEPENDENCIES) && addedDependencies != null && !removedElements.contains(name)) {
+                dependenciesFound = true;
+                int lineStart = closeStart - indent(pom, closeStart).length();
+                edits.add(new Edit(lineStart, lineStart
+                        , fragment(addedDependencies, indent + unit, unit, newline).substring(newline.length()) + newline));
+            }
+            if (removedElements.contains(name))
+                edits.add(removal(pom, element.start, closeEnd, true));
+            else if (name.equals(GROUP_ID) && groupId != null)
+                edits.add(new Edit(element.contentStart, closeStart, escape(groupId)));
+            else if (name.equals(ARTIFACT_ID) && artifactId != null)
+                edits.add(new Edit(element.contentStart, closeStart, escape(artifactId)));
+            else if (name.equals(DEPENDENCIES) && manageDependencies) {
+                edits.add(new Edit(element.start, element.start
+                        , String.format("<%s>%s%s%s", DEPENDENCY_MANAGEMENT, newline, indent, unit)));
+                indents.add(new Edit(element.start, closeEnd, unit));
+                edits.add(new Edit(closeEnd, closeEnd, String.format("%s%s</%s>", newline, indent, DEPENDENCY_MANAGEMENT)));
+            }
+            String fragment = insertions.get(name);
+            if (fragment != null && !removedElements.contains(name))
+                edits.add(new Edit(closeEnd, closeEnd, fragment(fragment, indent, unit, newline)));
+        } else if (name.equals(MAIN_CLASS)) {
+            values.putIfAbsent(name, pom.substring(element.contentStart, closeStart).trim());
+            if (mainClass != null)
+                edits.add(new Edit(element.contentStart, closeStart, escape(mainClass)));
+        }
+    }
+
+    /**
+     * An element which sits on lines of its own is removed with its indentation and line break.
+     * A block which follows a blank line takes the blank line after it along, or the one before it when it was
+     * the last child, so the blank line separation of the remaining elements stays as it was.
+     */
+    private static Edit removal(String pom, int start, int end, boolean block) {
+        int lineStart = start;
+        while (lineStart > 0 && (pom.charAt(lineStart - 1) == ' ' || pom.charAt(lineStart - 1) == '\t'))
+            lineStart--;
+        int lineEnd = end;
+        while (lineEnd < pom.length() && (pom.charAt(lineEnd) == ' ' || pom.charAt(lineEnd) == '\t'))
+            lineEnd++;
+        boolean ownLine = (lineStart == 0 || pom.charAt(lineStart - 1) == '\n')
+                && (lineEnd == pom.length() || pom.charAt(lineEnd) == '\n' || pom.charAt(lineEnd) == '\r');
+        if (!ownLine)
+            return new Edit(start, end, "");
+        if (pom.startsWith("\r\n", lineEnd))
+            lineEnd += 2;
+        else if (lineEnd < pom.length())
+            lineEnd++;
+        if (block && lineStart > 0) {
+            int previousStart = pom.lastIndexOf('\n', lineStart - 2) + 1;
+            int nextEnd = blankLine(pom, lineEnd);
+            if (nextEnd > lineEnd && pom.substring(previousStart, lineStart).isBlank())
+                lineEnd = nextEnd;
+            else if (pom.substring(previousStart, lineStart).isBlank() && closesParent(pom, lineEnd))
+                lineStart = previousStart;
+        }
+        return new Edit(lineStart, lineEnd, "");
+    }
+
+    /**
+     * @return The end of the line starting at the index if it is blank, otherwise the index
+     */
+    private static int blankLine(String pom, int lineStart) {
+        int i = lineStart;
+        while (i < pom.length() && (pom.charAt(i) == ' ' || pom.charAt(i) == '\t'))
+            i++;
+        if (pom.startsWith("\r\n", i))
+            return i + 2;
+        if (i < pom.length() && pom.charAt(i) == '\n')
+            return i + 1;
+        return lineStart;
+    }
+
+    private static boolean closesParent(String pom, int lineStart) {
+        int i = lineStart;
+        while (i < pom.length() && Character.isWhitespace(pom.charAt(i)))
+            i++;
+        return pom.startsWith("</", i);
+    }
+
+    /**
+     * @return The whitespace between the start of the line and an element
+     */
+    private static String indent(String pom, int start) {
+        int lineStart = start;
+        while (lineStart > 0 && (pom.charAt(lineStart - 1) == ' ' || pom.charAt(lineStart - 1) == '\t'))
+            lineStart--;
+        return pom.substring(lineStart, start);
+    }
+
+    private static String fragment(String fragment, String indent, String unit, String newline) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : fragment.split("\n", -1)) {
+            sb.append(newline);
+            if (line.isBlank())
+                continue;
+            int level = 0;
+            while (line.startsWith(FRAGMENT_INDENT, level * FRAGMENT_INDENT.length()))
+                level++;
+            sb.append(indent).append(unit.repeat(level)).append(line.substring(level * FRAGMENT_INDENT.length()));
+        }
+        return sb.toString();
+    }
+
+    private static int skip(String pom, int from, String terminator) throws IOException {
+        int end = pom.indexOf(terminator, from);
+        if (end < 0)
+            throw error(pom, from, String.format("missing %s", terminator));
+        return end + terminator.length();
+    }
+
+    /**
+     * @return The index after the '>' of a start tag, quoted attribute values may contain '>'
+     */
+    private static int tagEnd(String pom, int from) throws IOException {
+        char quote = 0;
+        for (int i = from + 1; i < pom.length(); i++) {
+            char c = pom.charAt(i);
+            if (quote != 0) {
+                if (c == quote)
+                    quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i + 1;
+            }
+        }
+        throw error(pom, from, "unterminated tag");
+    }
+
+    private static String localName(String pom, int start, int end) {
+        int i = start;
+        while (i < end && !Character.isWhitespace(pom.charAt(i)) && pom.charAt(i) != '/' && pom.charAt(i) != '>')
+            i++;
+        String name = pom.substring(start, i);
+        int colon = name.indexOf(':');
+        return colon < 0 ? name : name.substring(colon + 1);
+    }
+
+    static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&' -> sb.append("&amp;");
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static IOException error(String pom, int index, String message) {
+        int line = 1;
+        for (int i = 0; i < index && i < pom.length(); i++) {
+            if (pom.charAt(i) == '\n')
+                line++;
+        }
+        return new IOException(String.format("invalid pom, %s at line %d", message, line));
+    }
+}
@@ -2,9 +2,10 @@ package io.oreto.gungnir.cli.util;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.StandardCharsets;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -22,6 +23,31 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
 
     public static final String SEMI = ";";
     protected static final List<CharSequence> emptyList = new ArrayList<>();
+    static final int PATTERNS = 64;
+    static final int CHUNK = 8192;
+    static final long INVALID = 1;
+    static final int MAX_EXACT_DIGITS = 15;
+    static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11
+            , 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Encoding buffers reused by the writes of each thread
+     */
+    private static final ThreadLocal<ByteBuffer> directChunks = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(CHUNK));
+    private static final ThreadLocal<ByteBuffer> heapChunks = ThreadLocal.withInitial(() -> ByteBuffer.allocate(CHUNK));
+
+    /**
+     * Recently used compiled regexes, least recently used first
+     */
+    private static final Map<String, Pattern> patterns = Collections.synchronizedMap(
+            new LinkedHashMap<>(PATTERNS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > PATTERNS;
+        }
+    });
 
     /**
      * Static variables for characters
@@ -106,11 +132,9 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
             return false;
 
         boolean dotted = false;
-        int[] arr = s.chars().toArray();
-
-        int len = arr.length;
-        for (int i = 0; i < len; i++) {
-            char c = (char) arr[i];
+        boolean zero = true;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
 
             switch (c) {
                 // +/- can only be in the start position
@@ -132,9 +156,11 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
                         return false;
                 }
             }
+            if (c != Chars.ZERO)
+                zero = false;
         }
         // make sure natural number type isn't assigned a 0
-        return type != Num.Type.natural || !s.chars().allMatch(it -> (char) it == Chars.ZERO);
+        return type != Num.Type.natural || !zero;
     }
 
     /**
@@ -203,16 +229,113 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
         return Optional.empty();
     }
 
+    /**
+     * Validate and parse an integer in one pass, without allocating
+     * @param s The string to parse, an optional sign followed by digits
+     * @return The integer, OptionalInt.empty if the string is not an integer or does not fit in an int
+     */
+    public static OptionalInt parseInt(CharSequence s) {
+        long n = parse(s, Integer.MIN_VALUE);
+        if (n == INVALID)
+            return OptionalInt.empty();
+        return OptionalInt.of((int) (s.charAt(0) == Chars.NEGATIVE ? n : -n));
+    }
+
+    /**
+     * Validate and parse a long in one pass, without allocating
+     * @param s The string to parse, an optional sign followed by digits
+     * @return The long, OptionalLong.empty if the string is not an integer or does not fit in a long
+     */
+    public static OptionalLong parseLong(CharSequence s) {
+        long n = parse(s, Long.MIN_VALUE);
+        if (n == INVALID)
+            return OptionalLong.empty();
+        return OptionalLong.of(s.charAt(0) == Chars.NEGATIVE ? n : -n);
+    }
+
+    /**
+     * Validate and parse a decimal number in one pass, such as -12, 0.5 or .5.
+     * Up to 15 significant digits and 22 decimal places are converted exactly without allocating,
+     * longer numbers fall back to {@link Double#parseDouble(String)}.
+     * @param s The string to parse, an optional sign, digits and at most one decimal point which is not last
+     * @return The double, OptionalDouble.empty if the string is not a number
+     */
+    public static OptionalDouble parseDouble(CharSequence s) {
+        int length = s == null ? 0 : s.length();
+        if (length == 0)
+            return OptionalDouble.empty();
+        char first = s.charAt(0);
+        boolean negative = first == Chars.NEGATIVE;
+        int i = negative || first == Chars.POSITIVE ? 1 : 0;
+        if (i == length || s.charAt(length - 1) == Chars.DECIMAL)
+            return OptionalDouble.empty();
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                // leading zeros are not significant
+                if (mantissa != 0 || c != Chars.ZERO)
+                    digits++;
+                if (digits <= MAX_EXACT_DIGITS)
+                    mantissa = mantissa * 10 + (c - '0');
+                if (scale >= 0)
+                    scale++;
+            } else if (c == Chars.DECIMAL && scale < 0) {
+                scale = 0;
+            } else {
+                return OptionalDouble.empty();
+            }
+        }
+        scale = Math.max(scale, 0);
+        if (digits > MAX_EXACT_DIGITS || scale >= POWERS_OF_TEN.length)
+            return OptionalDouble.of(Double.parseDouble(s.toString()));
+        // both are exact doubles, so the one division rounds correctly
+        double n = mantissa / POWERS_OF_TEN[scale];
+        return OptionalDouble.of(negative ? -n : n);
+    }
+
+    /**
+     * @param s The string to parse, an optional sign followed by digits
+     * @param min The smallest value, Integer.MIN_VALUE or Long.MIN_VALUE
+     * @return The negated magnitude of the value, which is never positive,
+     * INVALID if the string is not an integer or the value is below min or above -(min + 1)
+     */
+    private static long parse(CharSequence s, long min) {
+        int length = s == null ? 0 : s.length();
+        if (length == 0)
+            return INVALID;
+        char first = s.charAt(0);
+        boolean negative = first == Chars.NEGATIVE;
+        int i = negative || first == Chars.POSITIVE ? 1 : 0;
+        if (i == length)
+            return INVALID;
+        // accumulate negatively, the negative range is the larger one
+        long limit = negative ? min : min + 1;
+        long multiplicationLimit = limit / 10;
+        long n = 0;
+        for (; i < length; i++) {
+            int digit = Character.digit(s.charAt(i), 10);
+            if (digit < 0 || n < multiplicationLimit)
+                return INVALID;
+            n *= 10;
+            if (n < limit + digit)
+                return INVALID;
+            n -= digit;
+        }
+        return n;
+    }
+
     /**
      * Convert string to an optional integer
      * @param s The string to convert
      * @return Optional integer if the string is a valid integer, Optional.empty otherwise
      */
     public static Optional<Integer> toInteger(CharSequence s) {
-        try {
-            return isInteger(s) ? Optional.of(Integer.parseInt(s.toString())) : Optional.empty();
-        } catch (NumberFormatException ignored) { }
-        return Optional.empty();
+        OptionalInt n = parseInt(s);
+        return n.isPresent() ? Optional.of(n.getAsInt()) : Optional.empty();
     }
 
     /**
@@ -221,10 +344,8 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
      * @return Optional long if the string is a valid long, Optional.empty otherwise
      */
     public static Optional<Long> toLong(CharSequence s) {
-        try {
-            return isNumber(s) ? Optional.of(Long.parseLong(s.toString())) : Optional.empty();
-        } catch (NumberFormatException ignored) { }
-        return Optional.empty();
+        OptionalLong n = parseLong(s);
+        return n.isPresent() ? Optional.of(n.getAsLong()) : Optional.empty();
     }
 
     /**
@@ -233,10 +354,8 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
      * @return Optional double if the string is a valid double, Optional.empty otherwise
      */
     public static Optional<Double> toDouble(CharSequence s) {
-        try {
-            return isNumber(s) ? Optional.of(Double.parseDouble(s.toString())) : Optional.empty();
-        } catch (NumberFormatException ignored) { }
-        return Optional.empty();
+        OptionalDouble n = parseDouble(s);
+        return n.isPresent() ? Optional.of(n.getAsDouble()) : Optional.empty();
     }
 
     /**
@@ -245,8 +364,11 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
      * @return Optional big integer if the string is a valid integer, Optional.empty otherwise
      */
     public static Optional<BigInteger> toBigInteger(CharSequence s) {
+        OptionalLong n = parseLong(s);
+        if (n.isPresent())
+            return Optional.of(BigInteger.valueOf(n.getAsLong()));
         try {
-            return isNumber(s) ? Optional.of(new BigInteger(s.toString())) : Optional.empty();
+            return isInteger(s) ? Optional.of(new BigInteger(s.toString())) : Optional.empty();
         } catch (NumberFormatException ignored) { }
         return Optional.empty();
     }
@@ -309,6 +431,145 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
         return Str.of(s).replace(regex, replacement).toString();
     }
 
+    /**
+     * Encode a string as UTF-8 straight into an array of the exact size
+     * @param s The string to encode
+     * @return The UTF-8 bytes, an unpaired surrogate is encoded as '?'
+     */
+    public static byte[] getBytes(CharSequence s) {
+        int length = s.length();
+        byte[] bytes = new byte[utf8Length(s)];
+        // one byte per char up to the first char which is not ASCII
+        int i = 0;
+        for (char c; i < length && (c = s.charAt(i)) < 0x80; i++)
+            bytes[i] = (byte) c;
+        if (i < length)
+            encode(s, i, ByteBuffer.wrap(bytes, i, bytes.length - i));
+        return bytes;
+    }
+
+    /**
+     * Write a string as UTF-8 in chunks through a reused direct buffer, without encoding the whole string first
+     * @param s The string to write
+     * @param channel The channel to write to
+     * @return The number of bytes written
+     */
+    public static long writeTo(CharSequence s, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = directChunks.get();
+        long written = 0;
+        for (int i = 0, length = s.length(); i < length; ) {
+            buffer.clear();
+            i = encode(s, i, buffer);
+            buffer.flip();
+            written += buffer.remaining();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+        return written;
+    }
+
+    /**
+     * Write a string as UTF-8 in chunks through a reused buffer, without encoding the whole string first
+     * @param s The string to write
+     * @param out The stream to write to
+     * @return The number of bytes written
+     */
+    public static long writeTo(CharSequence s, OutputStream out) throws IOException {
+        ByteBuffer buffer = heapChunks.get();
+        long written = 0;
+        for (int i = 0, length = s.length(); i < length; ) {
+            buffer.clear();
+            i = encode(s, i, buffer);
+            out.write(buffer.array(), 0, buffer.position());
+            written += buffer.position();
+        }
+        return written;
+    }
+
+    /**
+     * @return The number of bytes of the string in UTF-8
+     */
+    static int utf8Length(CharSequence s) {
+        int length = s.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80)
+                continue;
+            if (c < 0x800)
+                bytes++;
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                // 4 bytes for the two chars
+                bytes += 2;
+                i++;
+            } else if (!Character.isSurrogate(c))
+                bytes += 2;
+        }
+        return bytes;
+    }
+
+    /**
+     * Encode chars as UTF-8 until the buffer can not take the next one
+     * @param s The string to encode
+     * @param from The index of the first char to encode
+     * @param buffer The buffer to encode into
+     * @return The index of the first char which was not encoded
+     */
+    static int encode(CharSequence s, int from, ByteBuffer buffer) {
+        int length = s.length();
+        int i = from;
+        while (i < length) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                // ASCII runs are the common case, copy them without any further checks
+                int end = Math.min(length, i + buffer.remaining());
+                if (i == end)
+                    break;
+                do {
+                    buffer.put((byte) c);
+                } while (++i < end && (c = s.charAt(i)) < 0x80);
+                continue;
+            }
+            boolean pair = Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1));
+            int size = c < 0x800 ? 2 : pair ? 4 : Character.isSurrogate(c) ? 1 : 3;
+            if (buffer.remaining() < size)
+                break;
+            switch (size) {
+                case 2 -> buffer.put((byte) (0xC0 | c >> 6))
+                        .put((byte) (0x80 | c & 0x3F));
+                case 4 -> {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buffer.put((byte) (0xF0 | cp >> 18))
+                            .put((byte) (0x80 | cp >> 12 & 0x3F))
+                            .put((byte) (0x80 | cp >> 6 & 0x3F))
+                            .put((byte) (0x80 | cp & 0x3F));
+                }
+                // an unpaired surrogate can not be encoded
+                case 1 -> buffer.put((byte) '?');
+                default -> buffer.put((byte) (0xE0 | c >> 12))
+                        .put((byte) (0x80 | c >> 6 & 0x3F))
+                        .put((byte) (0x80 | c & 0x3F));
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Compile a regex, recently used patterns are compiled once
+     * @param regex The regex to compile
+     * @return The compiled pattern
+     */
+    public static Pattern pattern(CharSequence regex) {
+        String key = regex.toString();
+        Pattern pattern = patterns.get(key);
+        if (pattern == null) {
+            pattern = Pattern.compile(key);
+            patterns.put(key, pattern);
+        }
+        return pattern;
+    }
+
     static private Map<Integer, List<CharSequence>> groupBySizes(CharSequence[] search) {
         Map<Integer, List<CharSequence>> strings = new WeakHashMap<>();
         Arrays.stream(search).forEach(it -> {
@@ -322,6 +583,166 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
         return strings;
     }
 
+    /**
+     * Compile search strings for {@link #findAndReplace(Replacer)}
+     * @param replacements The replacement of each search string, empty search strings are ignored
+     * @return The compiled replacer, which can be shared and reused
+     */
+    public static Replacer replacer(Map<? extends CharSequence, ? extends CharSequence> replacements) {
+        return new Replacer(replacements);
+    }
+
+    /**
+     * Several search strings compiled into one Aho-Corasick automaton, so a text is searched for all of them
+     * in a single scan. Where matches overlap the leftmost one wins, and of those starting at the same index
+     * the longest. Immutable once compiled.
+     */
+    public static final class Replacer {
+        private final char[] alphabet;
+        private final int[] ascii = new int[128];
+        private final int symbols;
+        // transitions of every state over the alphabet, symbol 0 stands for any character outside of it
+        private final int[] next;
+        private final int[] depth;
+        // the longest search string ending in each state, -1 if none
+        private final int[] match;
+        private final String[] search;
+        private final String[] replacement;
+
+        private Replacer(Map<? extends CharSequence, ? extends CharSequence> replacements) {
+            List<String> searches = new ArrayList<>();
+            List<String> replacing = new ArrayList<>();
+            SortedSet<Character> chars = new TreeSet<>();
+            int size = 1;
+            for (Map.Entry<? extends CharSequence, ? extends CharSequence> entry : replacements.entrySet()) {
+                if (isEmpty(entry.getKey()))
+                    continue;
+                String s = entry.getKey().toString();
+                searches.add(s);
+                replacing.add(String.valueOf(entry.getValue()));
+                size += s.length();
+                for (char c : s.toCharArray())
+                    chars.add(c);
+            }
+            search = searches.toArray(String[]::new);
+            replacement = replacing.toArray(String[]::new);
+            alphabet = new char[chars.size()];
+            int symbol = 0;
+            for (char c : chars) {
+                alphabet[symbol++] = c;
+                if (c < ascii.length)
+                    ascii[c] = symbol;
+            }
+            symbols = alphabet.length + 1;
+
+            // the trie, a missing transition is 0 since the root is never a child
+            int[] trie = new int[size * symbols];
+            depth = new int[size];
+            match = new int[size];
+            Arrays.fill(match, -1);
+            int states = 1;
+            for (int p = 0; p < search.length; p++) {
+                int state = 0;
+                for (char c : search[p].toCharArray()) {
+                    int i = state * symbols + symbol(c);
+                    if (trie[i] == 0) {
+                        depth[states] = depth[state] + 1;
+                        trie[i] = states++;
+                    }
+                    state = trie[i];
+                }
+                match[state] = p;
+            }
+
+            // breadth first, complete the missing transitions through the failure links
+            next = trie;
+            int[] fail = new int[states];
+            int[] queue = new int[states];
+            int head = 0;
+            int tail = 0;
+            for (int c = 0; c < symbols; c++) {
+                if (next[c] != 0)
+                    queue[tail++] = next[c];
+            }
+            while (head < tail) {
+                int state = queue[head++];
+                int failed = match[fail[state]];
+                if (match[state] < 0 || (failed >= 0 && search[failed].length() > search[match[state]].length()))
+                    match[state] = failed;
+                for (int c = 0; c < symbols; c++) {
+                    int i = state * symbols + c;
+                    int child = next[i];
+                    int fallback = next[fail[state] * symbols + c];
+                    if (child == 0) {
+                        next[i] = fallback;
+                    } else {
+                        fail[child] = fallback;
+                        queue[tail++] = child;
+                    }
+                }
+            }
+        }
+
+        private int symbol(char c) {
+            if (c < ascii.length)
+                return ascii[c];
+            int i = Arrays.binarySearch(alphabet, c);
+            return i < 0 ? 0 : i + 1;
+        }
+
+        /**
+         * Replace every occurrence of the search strings
+         * @param s The string to search
+         * @return The resulting string after replacement
+         */
+        public String replace(CharSequence s) {
+            StringBuilder result = replace(s, s.length());
+            return result == null ? s.toString() : result.toString();
+        }
+
+        /**
+         * @return The text with at most max replacements in a new buffer, null if nothing was found
+         */
+        StringBuilder replace(CharSequence s, int max) {
+            int length = s.length();
+            StringBuilder result = null;
+            int copied = 0;
+            int count = 0;
+            int state = 0;
+            // the leftmost longest match so far, it is final once no search string in progress starts before it
+            int pending = -1;
+            int start = 0;
+            int end = 0;
+            int i = 0;
+            while (count < max && (i < length || pending >= 0)) {
+                if (i < length) {
+                    state = next[state * symbols + symbol(s.charAt(i++))];
+                    int p = match[state];
+                    if (p >= 0) {
+                        int from = i - search[p].length();
+                        if (pending < 0 || from < start || (from == start && i > end)) {
+                            pending = p;
+                            start = from;
+                            end = i;
+                        }
+                    }
+                    if (pending < 0 || i - depth[state] <= start)
+                        continue;
+                }
+                if (result == null)
+                    result = new StringBuilder(length + 16);
+                result.append(s, copied, start).append(replacement[pending]);
+                copied = end;
+                count++;
+                // anything scanned past the match is scanned again from the root
+                i = end;
+                state = 0;
+                pending = -1;
+            }
+            return result == null ? null : result.append(s, copied, length);
+        }
+    }
+
     // --------------------------------- WORDS ---------------------------------
     static final char[] delimiters = new char[] { Chars.SPACE, Chars.DASH, Chars.DECIMAL, Chars.UNDER_SCORE};
     static boolean isDelimiter(char c) { return Arrays.binarySearch(delimiters, c) > -1; }
@@ -385,7 +806,7 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
 
     // --------------------------------- END STATIC ---------------------------------
 
-    private final StringBuilder sb;
+    private StringBuilder sb;
 
     private Str(CharSequence... charSequences) {
         this.sb = new StringBuilder();
@@ -497,11 +918,198 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
      * @return The byte array representing this Str object
      */
     public byte[] getBytes() {
-        char[] chars = toArray();
-        ByteBuffer bb = StandardCharsets.UTF_8.encode(CharBuffer.wrap(chars));
-        byte[] b = new byte[bb.remaining()];
-        bb.get(b);
-        return b;
+        return getBytes(sb);
+    }
+
+    /**
+     * Write the Str as UTF-8
+     * @param channel The channel to write to
+     * @return The number of bytes written
+     */
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        return writeTo(sb, channel);
+    }
+
+    /**
+     * Write the Str as UTF-8
+     * @param out The stream to write to
+     * @return The number of bytes written
+     */
+    public long writeTo(OutputStream out) throws IOException {
+        return writeTo(sb, out);
+    }
+
+    /**
+     * Find the first occurrence of a string within a region of this string, the region is clamped to the string
+     * @param s The string to search for
+     * @param from The index to start the search at, inclusive
+     * @param to The index the match has to end by, exclusive
+     * @return The index of the match, -1 if there is none
+     */
+    public int find(CharSequence s, int from, int to) {
+        from = Math.max(from, 0);
+        to = Math.min(to, length());
+        int n = s.length();
+        if (n == 0)
+            return Math.min(from, to);
+        char first = s.charAt(0);
+        for (int i = from, last = to - n; i <= last; i++) {
+            if (sb.charAt(i) == first && regionMatches(i, s))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first occurrence of a string
+     * @param s The string to search for
+     * @param from The index to start the search at
+     * @return The index of the match, -1 if there is none
+     */
+    public int find(CharSequence s, int from) {
+        return find(s, from, length());
+    }
+
+    /**
+     * Find the first occurrence of a string
+     * @param s The string to search for
+     * @return The index of the match, -1 if there is none
+     */
+    public int find(CharSequence s) {
+        return find(s, 0, length());
+    }
+
+    /**
+     * Find the last occurrence of a string within a region of this string, the region is clamped to the string
+     * @param s The string to search for
+     * @param from The index the match has to start at or after, inclusive
+     * @param to The index the match has to end by, exclusive
+     * @return The index of the match, -1 if there is none
+     */
+    public int findLast(CharSequence s, int from, int to) {
+        from = Math.max(from, 0);
+        to = Math.min(to, length());
+        int n = s.length();
+        if (n == 0)
+            return from <= to ? to : -1;
+        char first = s.charAt(0);
+        for (int i = to - n; i >= from; i--) {
+            if (sb.charAt(i) == first && regionMatches(i, s))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the last occurrence of a string, searching backward
+     * @param s The string to search for
+     * @param from The largest index the match may start at
+     * @return The index of the match, -1 if there is none
+     */
+    public int findLast(CharSequence s, int from) {
+        if (from < 0)
+            return -1;
+        int n = s.length();
+        return findLast(s, 0, from > length() - n ? length() : from + n);
+    }
+
+    /**
+     * Find the last occurrence of a string
+     * @param s The string to search for
+     * @return The index of the match, -1 if there is none
+     */
+    public int findLast(CharSequence s) {
+        return findLast(s, 0, length());
+    }
+
+    /**
+     * Find the first occurrence of a character within a region of this string, the region is clamped to the string
+     * @param c The character to search for
+     * @param from The index to start the search at, inclusive
+     * @param to The index to end the search at, exclusive
+     * @return The index of the character, -1 if there is none
+     */
+    public int findChar(char c, int from, int to) {
+        for (int i = Math.max(from, 0), end = Math.min(to, length()); i < end; i++) {
+            if (sb.charAt(i) == c)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first occurrence of a character
+     * @param c The character to search for
+     * @param from The index to start the search at
+     * @return The index of the character, -1 if there is none
+     */
+    public int findChar(char c, int from) {
+        return findChar(c, from, length());
+    }
+
+    /**
+     * Find the first occurrence of a character
+     * @param c The character to search for
+     * @return The index of the character, -1 if there is none
+     */
+    public int findChar(char c) {
+        return findChar(c, 0, length());
+    }
+
+    /**
+     * Find the last occurrence of a character within a region of this string, the region is clamped to the string
+     * @param c The character to search for
+     * @param from The index to end the backward search at, inclusive
+     * @param to The index to start the backward search before, exclusive
+     * @return The index of the character, -1 if there is none
+     */
+    public int findLastChar(char c, int from, int to) {
+        for (int i = Math.min(to, length()) - 1, start = Math.max(from, 0); i >= start; i--) {
+            if (sb.charAt(i) == c)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the last occurrence of a character
+     * @param c The character to search for
+     * @return The index of the character, -1 if there is none
+     */
+    public int findLastChar(char c) {
+        return findLastChar(c, 0, length());
+    }
+
+    /**
+     * Find the first occurrence of any of the characters within a region of this string,
+     * the region is clamped to the string
+     * @param chars The characters to search for
+     * @param from The index to start the search at, inclusive
+     * @param to The index to end the search at, exclusive
+     * @return The index of the first of the characters found, -1 if there is none
+     */
+    public int findAny(char[] chars, int from, int to) {
+        for (int i = Math.max(from, 0), end = Math.min(to, length()); i < end; i++) {
+            char c = sb.charAt(i);
+            for (char any : chars) {
+                if (c == any)
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first occurrence of any of the characters
+     * @param chars The characters to search for
+     * @return The index of the first of the characters found, -1 if there is none
+     */
+    public int findAny(char[] chars) {
+        return findAny(chars, 0, length());
+    }
+
+    private static Optional<Integer> found(int i) {
+        return i > -1 ? Optional.of(i) : Optional.empty();
     }
 
     /**
@@ -512,8 +1120,7 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
      * @return An Optional index ge 0 if the string is found, Optional.empty otherwise
      */
     public Optional<Integer> indexOf(CharSequence s, int from) {
-        int i = sb.indexOf(s.toString(), from);
-        return i > -1 ? Optional.of(i) : Optional.empty();
+        return found(find(s, from));
     }
 
     /**
@@ -523,7 +1130,7 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
      * @return An Optional index gte 0 if the string is found, Optional.empty otherwise
      */
     public Optional<Integer> indexOf(CharSequence s) {
-        return indexOf(s, 0);
+        return found(find(s));
     }
 
     /**
@@ -533,7 +1140,7 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
      * @return An Optional index gte 0 if the string is found, Optional.empty otherwise
      */
     public Optional<Integer> indexOf(char c) {
-        return indexOf(String.valueOf(c), 0);
+        return found(findChar(c));
     }
 
     /**
@@ -544,8 +1151,7 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
      * @return An Optional index gte 0 if the string is found, Optional.empty otherwise
      */
     public Optional<Integer> lastIndexOf(CharSequence s, int from) {
-        int i = sb.lastIndexOf(s.toString(), from);
-        return i > -1 ? Optional.of(i) : Optional.empty();
+        return found(findLast(s, from));
     }
 
     /**
@@ -555,7 +1161,7 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
      * @return An Optional index gte 0 if the string is found, Optional.empty otherwise
      */
     public Optional<Integer> lastIndexOf(char c) {
-        return lastIndexOf(String.valueOf(c), length() - 1);
+        return found(findLastChar(c));
     }
 
     /**
@@ -566,35 +1172,80 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
      * @return The Str object.
      */
     public Str findAndReplace(CharSequence search, CharSequence replacement, int max) {
-        if (isNotEmpty(search)) {
-            String r = replacement.toString();
+        if (isNotEmpty(search) && max != 0) {
+            // collect the matches first, then copy the text around them into a fresh buffer in one pass
             int searchLength = search.length();
-            int replacementLength = replacement.length();
-
+            int[] starts = new int[8];
             int count = 0;
             if (max < 0) {
                 max = Math.abs(max);
-
-                for (int i = length(); count < max && i >= searchLength; i--) {
-                    int from = i - searchLength;
-                    if (charAt(from) == search.charAt(0) && subSequence(from, i).equals(search)) {
-                        sb.replace(from, i, r);
-                        count++;
+                for (int i = length() - searchLength; count < max && i >= 0; i--) {
+                    if (regionMatches(i, search)) {
+                        starts = append(starts, count++, i);
+                        i -= searchLength - 1;
                     }
                 }
+                // matches were found from the tail, copy from the head
+                for (int i = 0, j = count - 1; i < j; i++, j--) {
+                    int start = starts[i];
+                    starts[i] = starts[j];
+                    starts[j] = start;
+                }
             } else {
                 String s = search.toString();
-                int i = sb.indexOf(s);
-                while (count < max && i > -1) {
-                    sb.replace(i, i + searchLength, r);
-                    i = sb.indexOf(s, i + replacementLength);
-                    count++;
+                for (int i = sb.indexOf(s); count < max && i > -1; i = sb.indexOf(s, i + searchLength))
+                    starts = append(starts, count++, i);
+            }
+            if (count > 0) {
+                StringBuilder result = new StringBuilder(length() + count * (replacement.length() - searchLength));
+                int copied = 0;
+                for (int i = 0; i < count; i++) {
+                    result.append(sb, copied, starts[i]).append(replacement);
+                    copied = starts[i] + searchLength;
                 }
+                sb = result.append(sb, copied, length());
             }
         }
         return this;
     }
 
+    private static int[] append(int[] array, int size, int value) {
+        if (size == array.length)
+            array = Arrays.copyOf(array, size * 2);
+        array[size] = value;
+        return array;
+    }
+
+    private boolean regionMatches(int from, CharSequence s) {
+        for (int i = 0, len = s.length(); i < len; i++) {
+            if (sb.charAt(from + i) != s.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Replace every occurrence of the replacer's search strings in one pass
+     * @param replacer The compiled search strings and their replacements
+     * @return The Str object.
+     */
+    public Str findAndReplace(Replacer replacer) {
+        return findAndReplace(replacer, length());
+    }
+
+    /**
+     * Replace occurrences of the replacer's search strings in one pass
+     * @param replacer The compiled search strings and their replacements
+     * @param max The maximum amount of replacements to make in the string
+     * @return The Str object.
+     */
+    public Str findAndReplace(Replacer replacer, int max) {
+        StringBuilder result = replacer.replace(sb, max);
+        if (result != null)
+            sb = result;
+        return this;
+    }
+
     /**
      * Find and replace the search string with a replacement string
      * @param search The string to search for
@@ -613,25 +1264,45 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
      * @return This Str object
      */
     public Str replace(CharSequence regex, CharSequence replacement, int max) {
-        Matcher matcher = Pattern.compile(regex.toString()).matcher(toString());
-        boolean found = matcher.find();
-        int count = 0;
-        if (found && count < max) {
-            String r = replacement.toString();
-            int replacementLength = replacement.length();
-            int offset = 0;
-            while(found) {
-                int from = matcher.start();
-                int to = matcher.end();
-                sb.replace(from + offset, to + offset, r);
-                offset += replacementLength - (to - from);
+        return replace(pattern(regex), replacement, max);
+    }
+
+    /**
+     * Replace all pattern matches with a replacement string
+     * @param pattern The compiled regex to match with
+     * @param replacement The string to replace the matches with, taken literally
+     * @param max The maximum amount of replacements to make in the string
+     * @return This Str object
+     */
+    public Str replace(Pattern pattern, CharSequence replacement, int max) {
+        if (max <= 0)
+            return this;
+        // match over the buffer itself and copy the text between the matches into a fresh one
+        Matcher matcher = pattern.matcher(sb);
+        if (matcher.find()) {
+            StringBuilder result = new StringBuilder(length() + 16);
+            int copied = 0;
+            int count = 0;
+            do {
+                result.append(sb, copied, matcher.start()).append(replacement);
+                copied = matcher.end();
                 count++;
-                found = count < max && matcher.find();
-            }
+            } while (count < max && matcher.find());
+            sb = result.append(sb, copied, length());
         }
         return this;
     }
 
+    /**
+     * Replace all pattern matches with a replacement string
+     * @param pattern The compiled regex to match with
+     * @param replacement The string to replace the matches with, taken literally
+     * @return This Str object
+     */
+    public Str replace(Pattern pattern, CharSequence replacement) {
+        return replace(pattern, replacement, length());
+    }
+
     /**
      * Replace all regex matches with a replacement string
      * @param regex The regex to match with
@@ -666,9 +1337,10 @@ public class Str implements CharSequence, java.io.Serializable, Comparable<CharS
      * @return This Str object
      */
     public Str replaceFrom(CharSequence from, CharSequence to, boolean inclusive, CharSequence... replacement) {
-        int fromIndex = indexOf(from).orElse(-1);
+        int fromIndex = find(from);
+        int toIndex = fromIndex < 0 ? -1 : find(to, fromIndex);
         return replaceFrom(fromIndex
-                , indexOf(to, fromIndex).map(i -> inclusive ? i + to.length() : i).orElse(-1)
+                , toIndex < 0 || !inclusive ? toIndex : toIndex + to.length()
                 , false
                 , replacement);
     }
@@ -0,0 +1,218 @@
+package io.oreto.gungnir.cli.util;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Runs named stages on the shared {@link Workers} pool as a directed acyclic graph.
+ * Stages declare the resources they read and write, as '/' separated paths where a directory covers everything
+ * below it. A stage runs after every earlier declared stage it conflicts with (one writes what the other reads
+ * or writes) and after the stages it names explicitly, independent stages run in parallel.
+ * When a stage fails the stages after it are skipped, the other branches still run to completion.
+ */
+public class TaskGraph {
+    /**
+     * A unit of work in the graph
+     */
+    @FunctionalInterface
+    public interface Step {
+        void run() throws IOException;
+    }
+
+    /**
+     * A named step with its declared inputs and outputs
+     */
+    public static class Stage {
+        private final String name;
+        private final Step step;
+        private final Set<String> after = new LinkedHashSet<>();
+        private final Set<String> inputs = new LinkedHashSet<>();
+        private final Set<String> outputs = new LinkedHashSet<>();
+
+        Stage(String name, Step step) {
+            this.name = name;
+            this.step = step;
+        }
+
+        /**
+         * @param inputs Resources this stage reads
+         * @return The Stage object
+         */
+        public Stage inputs(String... inputs) {
+            this.inputs.addAll(List.of(inputs));
+            return this;
+        }
+
+        /**
+         * @param outputs Resources this stage writes
+         * @return The Stage object
+         */
+        public Stage outputs(String... outputs) {
+            this.outputs.addAll(List.of(outputs));
+            return this;
+        }
+
+        /**
+         * @param stages Names of stages which must finish first, even though no resources are shared
+         * @return The Stage object
+         */
+        public Stage after(Collection<String> stages) {
+            this.after.addAll(stages);
+            return this;
+        }
+
+        public Stage after(String... stages) {
+            return after(List.of(stages));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        boolean conflicts(Stage other) {
+            return overlaps(outputs, other.outputs) || overlaps(outputs, other.inputs) || overlaps(inputs, other.outputs);
+        }
+
+        private static boolean overlaps(Set<String> a, Set<String> b) {
+            for (String x : a) {
+                for (String y : b) {
+                    if (x.equals(y) || x.startsWith(y + '/') || y.startsWith(x + '/'))
+                        return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+
+    /**
+     * Declare a stage
+     * @param name A unique stage name
+     * @param step The work
+     * @return The stage, to declare its inputs and outputs
+     */
+    public Stage stage(String name, Step step) {
+        if (stages.containsKey(name))
+            throw new IllegalArgumentException(String.format("duplicate stage %s", name));
+        Stage stage = new Stage(name, step);
+        stages.put(name, stage);
+        return stage;
+    }
+
+    /**
+     * Add a stage which only has explicit dependencies
+     * @param name A unique stage name
+     * @param step The work
+     * @param after Names of the stages which must finish first
+     * @return The TaskGraph object
+     */
+    public TaskGraph add(String name, Step step, Collection<String> after) {
+        stage(name, step).after(after);
+        return this;
+    }
+
+    public TaskGraph add(String name, Step step, String... after) {
+        return add(name, step, List.of(after));
+    }
+
+    /**
+     * @return Every stage a stage runs after: explicit ones and earlier declared conflicting ones
+     */
+    Map<String, Set<String>> dependencies() {
+        Map<String, Set<String>> dependencies = new LinkedHashMap<>();
+        List<Stage> declared = new ArrayList<>(stages.values());
+        for (int i = 0; i < declared.size(); i++) {
+            Stage stage = declared.get(i);
+            Set<String> after = new LinkedHashSet<>(stage.after);
+            for (int j = 0; j < i; j++) {
+                if (stage.conflicts(declared.get(j)))
+                    after.add(declared.get(j).name);
+            }
+            dependencies.put(stage.name, after);
+        }
+        return dependencies;
+    }
+
+    /**
+     * @return Stage names in an order where every stage comes after the stages it depends on,
+     * otherwise in declaration order
+     */
+    public List<String> order() {
+        return order(dependencies());
+    }
+
+    private List<String> order(Map<String, Set<String>> dependencies) {
+        List<String> order = new ArrayList<>(stages.size());
+        Map<String, Boolean> visited = new HashMap<>();
+        for (String name : stages.keySet())
+            visit(name, dependencies, visited, order, new ArrayList<>());
+        return order;
+    }
+
+    private void visit(String name, Map<String, Set<String>> dependencies, Map<String, Boolean> visited
+            , List<String> order, List<String> path) {
+        Boolean done = visited.get(name);
+        if (Boolean.TRUE.equals(done))
+            return;
+        if (Boolean.FALSE.equals(done))
+            throw new IllegalStateException(String.format("stages form a cycle: %s -> %s"
+                    , String.join(" -> ", path.subList(path.indexOf(name), path.size())), name));
+        if (!stages.containsKey(name))
+            throw new IllegalStateException(String.format("unknown stage %s required by %s"
+                    , name, path.get(path.size() - 1)));
+        visited.put(name, false);
+        path.add(name);
+        for (String after : dependencies.get(name))
+            visit(after, dependencies, visited, order, path);
+        path.remove(path.size() - 1);
+        visited.put(name, true);
+        order.add(name);
+    }
+
+    /**
+     * Run every stage and wait for all of them.
+     * The failure thrown does not depend on timing: it is the failure of the first failed stage in {@link #order()},
+     * failures of other stages are suppressed in it, in the same order.
+     */
+    public void run() throws IOException {
+        Map<String, Set<String>> dependencies = dependencies();
+        List<String> order = order(dependencies);
+        Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+        for (String name : order) {
+            Stage stage = stages.get(name);
+            CompletableFuture<?>[] after = dependencies.get(name).stream()
+                    .map(futures::get)
+                    .toArray(CompletableFuture[]::new);
+            Workers.Task<Void> task = () -> {
+                stage.step.run();
+                return null;
+            };
+            futures.put(name, after.length == 0
+                    ? Workers.submit(task)
+                    : CompletableFuture.allOf(after).thenCompose(v -> Workers.submit(task)));
+        }
+
+        Throwable failure = null;
+        Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (String name : order) {
+            try {
+                futures.get(name).join();
+            } catch (CompletionException | CancellationException e) {
+                // a skipped stage carries the failure of the stage it ran after
+                Throwable cause = Workers.unwrap(e);
+                if (!seen.add(cause))
+                    continue;
+                if (failure == null)
+                    failure = cause;
+                else
+                    failure.addSuppressed(cause);
+            }
+        }
+        if (failure != null)
+            throw Workers.rethrow(failure);
+    }
+}
@@ -0,0 +1,166 @@
+package io.oreto.gungnir.cli.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Bounded worker pool shared by the file engines.
+ * The pool is a ForkJoinPool so tasks may wait on nested tasks without starving it.
+ * An invocation which needs its own parallelism opens a {@link Scope}, so concurrent invocations
+ * in one process never resize or shut down each other's pool.
+ */
+public class Workers {
+    private static final InheritableThreadLocal<ForkJoinPool> scoped = new InheritableThreadLocal<>();
+    private static ForkJoinPool pool;
+
+    /**
+     * A unit of work which may fail with an IOException
+     * @param <T> The result type
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * A pool private to one invocation. Work submitted by the thread which opened the scope, by threads it starts
+     * and by the workers of the pool runs on it. Closing the scope shuts the pool down after its queued work.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final ForkJoinPool pool;
+        private final ForkJoinPool outer;
+
+        private Scope(int parallelism) {
+            this.pool = newPool(parallelism);
+            this.outer = scoped.get();
+            scoped.set(pool);
+        }
+
+        @Override
+        public void close() {
+            scoped.set(outer);
+            pool.shutdown();
+        }
+    }
+
+    private static final class Worker extends ForkJoinWorkerThread {
+        Worker(ForkJoinPool pool) {
+            super(pool);
+            setName("gungnir-worker-" + getPoolIndex());
+            setDaemon(true);
+        }
+    }
+
+    /**
+     * Run the work of the calling thread on a pool of its own until the scope is closed
+     * @param parallelism The number of threads, at least 1
+     * @return The scope to close when the invocation is done
+     */
+    public static Scope scope(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        return new Scope(parallelism);
+    }
+
+    /**
+     * @return The pool of the current scope, or the shared pool which is created on first use
+     */
+    public static ExecutorService executor() {
+        ForkJoinPool current = Thread.currentThread() instanceof Worker worker ? worker.getPool() : scoped.get();
+        // work outliving its scope, such as a background deletion, finishes on the shared pool
+        if (current != null && !current.isShutdown())
+            return current;
+        return shared();
+    }
+
+    private static synchronized ForkJoinPool shared() {
+        if (pool == null)
+            pool = newPool(Runtime.getRuntime().availableProcessors());
+        return pool;
+    }
+
+    private static ForkJoinPool newPool(int parallelism) {
+        return new ForkJoinPool(parallelism, Worker::new, null, false);
+    }
+
+    /**
+     * Run a task on the pool of the current scope
+     * @param task The task
+     * @return The pending result
+     */
+    public static <T> CompletableFuture<T> submit(Task<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor());
+    }
+
+    /**
+     * Run all tasks on the pool of the current scope and wait for every one of them.
+     * If tasks fail, the failure of the first task in list order is thrown with the others suppressed.
+     * @param tasks The tasks to run
+     * @return The task results in task order
+     */
+    public static <T> List<T> all(Collection<? extends Task<T>> tasks) throws IOException {
+        if (tasks.size() == 1) {
+            // not worth a thread hop
+            return Collections.singletonList(tasks.iterator().next().call());
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(tasks.size());
+        for (Task<T> task : tasks)
+            futures.add(submit(task));
+
+        List<T> results = new ArrayList<>(futures.size());
+        Throwable failure = null;
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException | CancellationException e) {
+                Throwable cause = unwrap(e);
+                if (failure == null)
+                    failure = cause;
+                else if (failure != cause)
+                    failure.addSuppressed(cause);
+            }
+        }
+        if (failure != null)
+            throw rethrow(failure);
+        return results;
+    }
+
+    /**
+     * Remove the CompletionException and UncheckedIOException wrappers of a task failure
+     * @param e The failure
+     * @return The original cause
+     */
+    public static Throwable unwrap(Throwable e) {
+        Throwable cause = e;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException
+                || cause instanceof UncheckedIOException) && cause.getCause() != null)
+            cause = cause.getCause();
+        return cause;
+    }
+
+    /**
+     * Throw a task failure as an IOException or unchecked exception
+     * @param failure The unwrapped failure
+     * @return Never returns, declared so callers can write throw rethrow(e)
+     */
+    public static IOException rethrow(Throwable failure) throws IOException {
+        if (failure instanceof IOException io)
+            throw io;
+        if (failure instanceof RuntimeException runtime)
+            throw runtime;
+        if (failure instanceof Error error)
+            throw error;
+        throw new IOException(failure);
+    }
+}
@@ -1,28 +1,157 @@
 package io.oreto.gungnir.cli.vsc;
 
+import io.oreto.gungnir.cli.util.FileUtils;
+
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 
 public class Git {
+    static final Duration CLONE_TIMEOUT = Duration.ofMinutes(5);
+    static final Duration QUERY_TIMEOUT = Duration.ofSeconds(30);
+    static final String ARCHIVE_UMASK = "tar.umask=0022";
+
+    public static String ghUrl(String project) {
+        return String.format("https://github.com/ross-oreto/%s", project);
+    }
 
+    /**
+     * Shallow, blobless clone of a GitHub project, only the files of the latest commit are transferred
+     * @param project The GitHub project name
+     * @param path The directory to clone into
+     * @return The cloned directory
+     */
     public static File cloneGh(String project, Path path) throws InterruptedException, IOException {
-        String repo = String.format("https://github.com/ross-oreto/%s", project);
-        String command = String.format("git clone %s %s", repo, path);
-        Process p = Runtime.getRuntime().exec(command);
-        p.waitFor();
-        if (p.exitValue() == 0 && Files.exists(path))
+        return clone(ghUrl(project), path, 1, true);
+    }
+
+    /**
+     * Clone a repository
+     * @param url The repository url
+     * @param path The directory to clone into
+     * @param depth Number of commits of history to fetch, 0 for the full history
+     * @param blobless True to defer fetching file contents until they are checked out
+     * @return The cloned directory
+     */
+    public static File clone(String url, Path path, int depth, boolean blobless)
+            throws InterruptedException, IOException {
+        List<String> command = new ArrayList<>(List.of("git", "clone", "--quiet"));
+        if (depth > 0)
+            command.add("--depth=" + depth);
+        if (blobless)
+            command.add("--filter=blob:none");
+        command.add(url);
+        command.add(path.toString());
+
+        ProcessResult result = git(command.toArray(new String[0])).timeout(CLONE_TIMEOUT).run();
+        if (result.isSuccess() && Files.exists(path))
             return path.toFile();
-        else {
-            printProcess(p);
-            throw new IOException("error creating application");
+        else
+            throw new IOException(String.format("error creating application: %s", result.describe()));
+    }
+
+    /**
+     * Look up the commit hash the remote HEAD of a GitHub project points to, without cloning it
+     * @param project The GitHub project name
+     * @return The commit hash, Optional.empty if the remote could not be reached
+     */
+    public static Optional<String> lsRemoteGh(String project) throws InterruptedException, IOException {
+        ProcessResult result = git("git", "ls-remote", ghUrl(project), "HEAD").timeout(QUERY_TIMEOUT).run();
+        if (!result.isSuccess() || result.output().isEmpty())
+            return Optional.empty();
+        String hash = result.output().get(0).split("\\s+")[0];
+        return hash.isEmpty() ? Optional.empty() : Optional.of(hash);
+    }
+
+    /**
+     * Resolve the commit hash HEAD points to in a local repository
+     * @param repository The repository working tree
+     * @return The commit hash
+     */
+    public static String revParse(Path repository) throws InterruptedException, IOException {
+        ProcessResult result = git("git", "rev-parse", "HEAD")
+                .directory(repository)
+                .timeout(QUERY_TIMEOUT)
+                .run();
+        if (!result.isSuccess() || result.output().isEmpty())
+            throw new IOException(String.format("unable to resolve HEAD of %s: %s", repository, result.describe()));
+        return result.output().get(0).trim();
+    }
+
+    /**
+     * Stream a tar archive of the files of a commit, without checking anything out
+     * @param repository A local git directory (bare repository or .git) or a remote url
+     * @param ref The commit, branch or tag to archive
+     * @param handler Reads the tar stream
+     */
+    public static void archive(String repository, String ref, ProcessRunner.StreamHandler handler)
+            throws InterruptedException, IOException {
+        if (isRemote(repository)) {
+            fetchArchive(repository, ref, handler);
+            return;
+        }
+        // git archive defaults to a 0002 umask, archive the modes a checkout would have
+        ProcessResult result = git("git", "-c", ARCHIVE_UMASK, "--git-dir=" + repository, "archive", "--format=tar", ref)
+                .timeout(CLONE_TIMEOUT)
+                .run(handler);
+        if (!result.isSuccess())
+            throw new IOException(String.format("unable to archive %s: %s", repository, result.describe()));
+    }
+
+    /**
+     * Hosts such as GitHub and GitLab do not serve git archive over any protocol, so shallow fetch the commit
+     * into a temporary bare repository and archive it from there
+     * @param url The repository url
+     * @param ref The commit, branch or tag to archive
+     * @param handler Reads the tar stream
+     */
+    static void fetchArchive(String url, String ref, ProcessRunner.StreamHandler handler)
+            throws InterruptedException, IOException {
+        Path gitDir = Files.createTempDirectory("gungnir-fetch-");
+        try {
+            ProcessResult result = git("git", "init", "--quiet", "--bare", gitDir.toString())
+                    .timeout(QUERY_TIMEOUT)
+                    .run();
+            if (result.isSuccess())
+                result = git("git", "--git-dir=" + gitDir, "fetch", "--quiet", "--depth=1", url, ref)
+                        .timeout(CLONE_TIMEOUT)
+                        .run();
+            if (!result.isSuccess())
+                throw new IOException(String.format("unable to fetch %s: %s", url, result.describe()));
+            archive(gitDir.toString(), "FETCH_HEAD", handler);
+        } finally {
+            FileUtils.deleteDirectory(gitDir);
         }
     }
 
-    private static void printProcess(Process process) throws IOException {
-        System.out.println(Arrays.toString(process.getInputStream().readAllBytes()));
-        System.out.println(Arrays.toString(process.getErrorStream().readAllBytes()));
+    /**
+     * Resolve the commit hash a ref points to in a local git directory
+     * @param gitDir A bare repository or .git directory
+     * @param ref The ref to resolve
+     * @return The commit hash
+     */
+    public static String revParse(Path gitDir, String ref) throws InterruptedException, IOException {
+        ProcessResult result = git("git", "--git-dir=" + gitDir, "rev-parse", ref).timeout(QUERY_TIMEOUT).run();
+        if (!result.isSuccess() || result.output().isEmpty())
+            throw new IOException(String.format("unable to resolve %s of %s: %s", ref, gitDir, result.describe()));
+        return result.output().get(0).trim();
+    }
+
+    /**
+     * @param location A repository location
+     * @return True if the location is a url git has to reach over the network
+     */
+    public static boolean isRemote(String location) {
+        return (location.contains("://") && !location.startsWith("file://")) || location.matches("^[\\w.-]+@[^:]+:.*");
+    }
+
+    private static ProcessRunner git(String... command) {
+        // never wait on a credential prompt nobody can answer
+        return new ProcessRunner(command).environment("GIT_TERMINAL_PROMPT", "0");
     }
 }
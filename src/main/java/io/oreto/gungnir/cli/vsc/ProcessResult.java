@@ -0,0 +1,42 @@
+package io.oreto.gungnir.cli.vsc;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of a finished, timed out or cancelled process
+ * @param command The command line which was executed
+ * @param exitCode The process exit code, -1 if the process was killed
+ * @param output Lines written to stdout
+ * @param errors Lines written to stderr
+ * @param duration Wall clock time the process ran for
+ * @param timedOut True if the process was killed because it exceeded its timeout
+ */
+public record ProcessResult(List<String> command
+        , int exitCode
+        , List<String> output
+        , List<String> errors
+        , Duration duration
+        , boolean timedOut) {
+
+    /**
+     * @return True if the process completed on its own with exit code 0
+     */
+    public boolean isSuccess() {
+        return exitCode == 0 && !timedOut;
+    }
+
+    /**
+     * @return A human readable summary of the result, including stderr if the process failed
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder(String.join(" ", command));
+        if (timedOut)
+            sb.append(" timed out after ").append(duration.toMillis()).append("ms");
+        else
+            sb.append(" exited with ").append(exitCode);
+        for (String line : errors)
+            sb.append(System.lineSeparator()).append(line);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,288 @@
+package io.oreto.gungnir.cli.vsc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Runs external processes built with {@link ProcessBuilder}.
+ * stdout and stderr are drained line by line on background threads while the process runs,
+ * so a chatty process can never block on a full pipe.
+ */
+public class ProcessRunner {
+    static final Duration KILL_GRACE = Duration.ofSeconds(2);
+
+    private final List<String> command;
+    private final Map<String, String> environment;
+    private Path directory;
+    private Duration timeout;
+    private Consumer<String> outputListener;
+    private Consumer<String> errorListener;
+
+    /**
+     * Consumes the raw stdout of a process
+     */
+    @FunctionalInterface
+    public interface StreamHandler {
+        void handle(InputStream output) throws IOException;
+    }
+
+    public ProcessRunner(String... command) {
+        this.command = List.of(command);
+        this.environment = new LinkedHashMap<>();
+        this.outputListener = line -> {};
+        this.errorListener = line -> {};
+    }
+
+    public ProcessRunner directory(Path directory) {
+        this.directory = directory;
+        return this;
+    }
+
+    public ProcessRunner environment(String name, String value) {
+        environment.put(name, value);
+        return this;
+    }
+
+    /**
+     * Kill the process if it does not finish in time
+     * @param timeout Maximum time to wait, null to wait forever
+     * @return The ProcessRunner object
+     */
+    public ProcessRunner timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Receive each stdout line as soon as it is read
+     * @param listener The line consumer
+     * @return The ProcessRunner object
+     */
+    public ProcessRunner onOutput(Consumer<String> listener) {
+        this.outputListener = listener;
+        return this;
+    }
+
+    /**
+     * Receive each stderr line as soon as it is read
+     * @param listener The line consumer
+     * @return The ProcessRunner object
+     */
+    public ProcessRunner onError(Consumer<String> listener) {
+        this.errorListener = listener;
+        return this;
+    }
+
+    /**
+     * Start the process without waiting for it
+     * @return A handle to the running process
+     * @throws IOException if the process cannot be started
+     */
+    public Execution start() throws IOException {
+        return start(true);
+    }
+
+    protected Execution start(boolean drainOutput) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        if (directory != null)
+            builder.directory(directory.toFile());
+        builder.environment().putAll(environment);
+        return new Execution(builder.start(), drainOutput);
+    }
+
+    /**
+     * Run the process to completion. Interrupting the calling thread cancels the process.
+     * @return The process result
+     * @throws IOException if the process cannot be started or its output cannot be read
+     * @throws InterruptedException if the calling thread was interrupted, the process is killed first
+     */
+    public ProcessResult run() throws IOException, InterruptedException {
+        Execution execution = start();
+        try {
+            return execution.await();
+        } catch (InterruptedException e) {
+            execution.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Run the process to completion, handing its raw stdout to a handler on the calling thread.
+     * stderr is still drained in the background. If the handler fails the process is cancelled,
+     * if the timeout elapses while the handler is reading the process is killed, which ends the stream.
+     * @param handler Reads the process output as a binary stream
+     * @return The process result, its output lines are always empty
+     */
+    public ProcessResult run(StreamHandler handler) throws IOException, InterruptedException {
+        Execution execution = start(false);
+        CompletableFuture<Void> watchdog = timeout == null
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.runAsync(execution::expire
+                        , CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS));
+        try (InputStream in = execution.process.getInputStream()) {
+            handler.handle(in);
+            // let the process finish writing whatever the handler did not need
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException | RuntimeException e) {
+            watchdog.cancel(false);
+            execution.cancel();
+            // the stream broke because the process was killed, report the timeout rather than a truncated read
+            if (execution.timedOut)
+                return execution.await();
+            throw e;
+        }
+        try {
+            return execution.await();
+        } catch (InterruptedException e) {
+            execution.cancel();
+            throw e;
+        } finally {
+            watchdog.cancel(false);
+        }
+    }
+
+    /**
+     * A started process with its output being drained in the background
+     */
+    public class Execution {
+        private final Process process;
+        private final long started;
+        private final Drain output;
+        private final Drain errors;
+        private volatile boolean timedOut;
+
+        Execution(Process process, boolean drainOutput) throws IOException {
+            this.process = process;
+            this.started = System.nanoTime();
+            process.getOutputStream().close();
+            this.output = drainOutput ? drain(process.getInputStream(), outputListener, "stdout") : Drain.none();
+            this.errors = drain(process.getErrorStream(), errorListener, "stderr");
+        }
+
+        public long pid() {
+            return process.pid();
+        }
+
+        public boolean isAlive() {
+            return process.isAlive();
+        }
+
+        /**
+         * Kill the process and everything it started, politely first and forcibly if the process does not exit
+         * within a short grace period. Descendants, such as the transport helpers of git, inherit the output pipes
+         * and would keep them open after the process itself is gone.
+         */
+        public void cancel() {
+            List<ProcessHandle> descendants = process.descendants().toList();
+            descendants.forEach(ProcessHandle::destroy);
+            process.destroy();
+            try {
+                if (!process.waitFor(KILL_GRACE.toMillis(), TimeUnit.MILLISECONDS))
+                    destroyForcibly(descendants);
+            } catch (InterruptedException e) {
+                destroyForcibly(descendants);
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void destroyForcibly(List<ProcessHandle> descendants) {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+            // once the process is gone its children are orphaned and no longer show up as descendants
+            descendants.forEach(ProcessHandle::destroyForcibly);
+        }
+
+        private void expire() {
+            timedOut = true;
+            cancel();
+        }
+
+        /**
+         * Wait for the process to exit, or kill it when the timeout, counted from the start, elapses
+         * @return The process result
+         */
+        public ProcessResult await() throws InterruptedException {
+            if (timeout == null) {
+                process.waitFor();
+            } else {
+                long remaining = timeout.toNanos() - (System.nanoTime() - started);
+                if (!process.waitFor(Math.max(remaining, 0), TimeUnit.NANOSECONDS))
+                    expire();
+            }
+            int exitCode = process.isAlive() ? -1 : process.exitValue();
+            return new ProcessResult(command
+                    , timedOut ? -1 : exitCode
+                    , output.lines()
+                    , errors.lines()
+                    , Duration.ofNanos(System.nanoTime() - started)
+                    , timedOut);
+        }
+    }
+
+    /**
+     * Lines read from one stream of a process by a background thread
+     */
+    private static class Drain {
+        private final List<String> lines = new ArrayList<>();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        static Drain none() {
+            Drain drain = new Drain();
+            drain.done.complete(null);
+            return drain;
+        }
+
+        /**
+         * Wait for the stream to close, at most for the kill grace period
+         * @return Every line read, only the lines read so far if something still holds the stream open
+         */
+        List<String> lines() throws InterruptedException {
+            try {
+                done.get(KILL_GRACE.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // an orphaned descendant of the process still writes to the pipe, don't wait for it
+            } catch (ExecutionException e) {
+                throw (RuntimeException) e.getCause();
+            }
+            synchronized (lines) {
+                return new ArrayList<>(lines);
+            }
+        }
+    }
+
+    private static Drain drain(InputStream in, Consumer<String> listener, String name) {
+        Drain drain = new Drain();
+        Thread thread = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    synchronized (drain.lines) {
+                        drain.lines.add(line);
+                    }
+                    listener.accept(line);
+                }
+                drain.done.complete(null);
+            } catch (IOException e) {
+                // the stream is closed when a cancelled process is destroyed, keep what was read
+                drain.done.complete(null);
+            } catch (RuntimeException e) {
+                drain.done.completeExceptionally(e);
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return drain;
+    }
+}
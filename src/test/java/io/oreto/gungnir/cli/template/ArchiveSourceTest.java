@@ -0,0 +1,91 @@
+package io.oreto.gungnir.cli.template;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArchiveSourceTest {
+
+    static List<String> names(ArchiveSource source) throws IOException {
+        List<String> names = new ArrayList<>();
+        source.read((name, directory, mode, content) ->
+                names.add(directory ? name : name + '=' + new String(content.readAllBytes(), StandardCharsets.UTF_8)));
+        return names;
+    }
+
+    static byte[] zip(String... names) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (String name : names) {
+                zip.putNextEntry(new ZipEntry(name));
+                if (!name.endsWith("/"))
+                    zip.write(name.getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    static ArchiveSource zipSource(String... names) throws IOException {
+        byte[] zip = zip(names);
+        return new ArchiveSource(() -> new ByteArrayInputStream(zip), ArchiveSource.Format.ZIP);
+    }
+
+    @Test
+    public void stripsTheWrappingDirectory() throws IOException {
+        ArchiveSource source = zipSource("gungnir-launch-main/", "gungnir-launch-main/pom.xml"
+                , "gungnir-launch-main/src/", "gungnir-launch-main/src/Main.java");
+        assertEquals(List.of("pom.xml=gungnir-launch-main/pom.xml", "src/", "src/Main.java=gungnir-launch-main/src/Main.java")
+                , names(source));
+    }
+
+    @Test
+    public void keepsTopLevelEntries() throws IOException {
+        assertEquals(List.of("pom.xml=pom.xml", "src/", "src/Main.java=src/Main.java")
+                , names(zipSource("pom.xml", "src/", "src/Main.java")));
+        // a lone directory with a file beside it is not a wrapper
+        assertEquals(List.of("src/", "src/Main.java=src/Main.java", "pom.xml=pom.xml")
+                , names(zipSource("src/", "src/Main.java", "pom.xml")));
+        assertEquals(List.of("pom.xml=pom.xml"), names(zipSource("pom.xml")));
+    }
+
+    @Test
+    public void stripsTheWrappingDirectoryOfTarGz() throws IOException {
+        byte[] tar = new TarTest.TarWriter()
+                .file("gungnir-launch-1.0/pom.xml", 0644, "<project/>")
+                .file("gungnir-launch-1.0/mvnw", 0755, "#!/bin/sh")
+                .finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(tar);
+        }
+        byte[] tarGz = out.toByteArray();
+        ArchiveSource source = new ArchiveSource(() -> new ByteArrayInputStream(tarGz), ArchiveSource.Format.TAR_GZ);
+        List<Integer> modes = new ArrayList<>();
+        source.read((name, directory, mode, content) -> modes.add(mode));
+        assertEquals(List.of("pom.xml=<project/>", "mvnw=#!/bin/sh"), names(source));
+        assertEquals(List.of(0644, 0755), modes);
+    }
+
+    @Test
+    public void decompressesTheArchiveOnce() throws IOException {
+        byte[] zip = zip("gungnir-launch-main/", "gungnir-launch-main/pom.xml");
+        int[] opened = new int[1];
+        ArchiveSource source = new ArchiveSource(() -> {
+            opened[0]++;
+            return new ByteArrayInputStream(zip);
+        }, ArchiveSource.Format.ZIP);
+        assertEquals(List.of("pom.xml=gungnir-launch-main/pom.xml"), names(source));
+        assertEquals(1, opened[0]);
+    }
+}
@@ -0,0 +1,164 @@
+package io.oreto.gungnir.cli.template;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TarTest {
+    record Read(String name, boolean directory, int mode, String content) {
+    }
+
+    /**
+     * Writes ustar archives the way git archive lays them out
+     */
+    static class TarWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        TarWriter directory(String name) {
+            return entry(name, '5', 0755, new byte[0], "");
+        }
+
+        TarWriter file(String name, int mode, String content) {
+            return entry(name, '0', mode, content.getBytes(StandardCharsets.UTF_8), "");
+        }
+
+        TarWriter entry(String name, char type, int mode, byte[] content, String prefix) {
+            byte[] header = new byte[Tar.BLOCK];
+            put(header, 0, name);
+            put(header, 100, String.format("%07o", mode));
+            put(header, 108, "0000000");
+            put(header, 116, "0000000");
+            put(header, 124, String.format("%011o", content.length));
+            put(header, 136, "00000000000");
+            header[156] = (byte) type;
+            put(header, 257, "ustar");
+            put(header, 263, "00");
+            put(header, 345, prefix);
+            Arrays.fill(header, 148, 156, (byte) ' ');
+            int checksum = 0;
+            for (byte b : header)
+                checksum += b & 0xff;
+            put(header, 148, String.format("%06o", checksum));
+            out.writeBytes(header);
+            out.writeBytes(content);
+            int rest = content.length % Tar.BLOCK;
+            if (rest > 0)
+                out.writeBytes(new byte[Tar.BLOCK - rest]);
+            return this;
+        }
+
+        TarWriter pax(String path) {
+            String record = " path=" + path + "\n";
+            int length = record.length() + 1;
+            while (String.valueOf(length).length() + record.length() != length)
+                length++;
+            return entry("pax_header", 'x', 0644, (length + record).getBytes(StandardCharsets.UTF_8), "");
+        }
+
+        byte[] finish() {
+            out.writeBytes(new byte[2 * Tar.BLOCK]);
+            return out.toByteArray();
+        }
+
+        byte[] truncated(int length) {
+            return Arrays.copyOf(out.toByteArray(), length);
+        }
+
+        private static void put(byte[] header, int offset, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(bytes, 0, header, offset, bytes.length);
+        }
+    }
+
+    static List<Read> read(byte[] tar) throws IOException {
+        List<Read> entries = new ArrayList<>();
+        Tar.read(new ByteArrayInputStream(tar), (name, directory, mode, content) ->
+                entries.add(new Read(name, directory, mode, new String(content.readAllBytes(), StandardCharsets.UTF_8))));
+        return entries;
+    }
+
+    @Test
+    public void readsFilesAndDirectories() throws IOException {
+        String large = "x".repeat(Tar.BLOCK * 3 + 17);
+        byte[] tar = new TarWriter()
+                .directory("src/")
+                .file("src/Main.java", 0644, "class Main {}\n")
+                .file("mvnw", 0755, "#!/bin/sh\n")
+                .file("empty", 0644, "")
+                .file("large", 0644, large)
+                .file("after", 0644, "after large")
+                .finish();
+        assertEquals(List.of(new Read("src/", true, 0755, "")
+                , new Read("src/Main.java", false, 0644, "class Main {}\n")
+                , new Read("mvnw", false, 0755, "#!/bin/sh\n")
+                , new Read("empty", false, 0644, "")
+                , new Read("large", false, 0644, large)
+                , new Read("after", false, 0644, "after large")), read(tar));
+    }
+
+    @Test
+    public void skipsWhatTheVisitorDoesNotRead() throws IOException {
+        byte[] tar = new TarWriter()
+                .file("first", 0644, "y".repeat(Tar.BLOCK + 100))
+                .file("second", 0644, "second")
+                .finish();
+        List<String> contents = new ArrayList<>();
+        Tar.read(new ByteArrayInputStream(tar), (name, directory, mode, content) -> {
+            byte[] head = new byte[3];
+            int n = content.read(head);
+            contents.add(new String(head, 0, n, StandardCharsets.UTF_8));
+        });
+        assertEquals(List.of("yyy", "sec"), contents);
+    }
+
+    @Test
+    public void readsLongNames() throws IOException {
+        String longName = "src/main/java/" + "package/".repeat(20) + "Main.java";
+        byte[] tar = new TarWriter()
+                .entry("Main.java", '0', 0644, "prefixed".getBytes(StandardCharsets.UTF_8), "src/main/java/io/oreto")
+                .pax(longName)
+                .file("truncated-name", 0644, "pax")
+                .entry("././@LongLink", 'L', 0644, (longName + '\0').getBytes(StandardCharsets.UTF_8), "")
+                .file("truncated-name", 0644, "gnu")
+                .file("plain", 0644, "plain")
+                .finish();
+        assertEquals(List.of(new Read("src/main/java/io/oreto/Main.java", false, 0644, "prefixed")
+                , new Read(longName, false, 0644, "pax")
+                , new Read(longName, false, 0644, "gnu")
+                , new Read("plain", false, 0644, "plain")), read(tar));
+    }
+
+    @Test
+    public void skipsGlobalHeadersAndLinks() throws IOException {
+        byte[] tar = new TarWriter()
+                .entry("pax_global_header", 'g', 0644, "52 comment=79737e6839684edfa993b193e5a6052230ff1555\n"
+                        .getBytes(StandardCharsets.UTF_8), "")
+                .entry("link", '2', 0777, new byte[0], "")
+                .file("README.md", 0644, "readme")
+                .finish();
+        assertEquals(List.of(new Read("README.md", false, 0644, "readme")), read(tar));
+    }
+
+    @Test
+    public void endsWithoutEndOfArchiveBlocks() throws IOException {
+        TarWriter writer = new TarWriter().file("a", 0644, "a");
+        byte[] tar = writer.truncated(2 * Tar.BLOCK);
+        assertEquals(List.of(new Read("a", false, 0644, "a")), read(tar));
+    }
+
+    @Test
+    public void failsOnTruncatedArchives() {
+        TarWriter writer = new TarWriter().file("a", 0644, "a".repeat(Tar.BLOCK * 2));
+        assertThrows(EOFException.class, () -> read(writer.truncated(Tar.BLOCK + 100)));
+        assertThrows(EOFException.class, () -> read(writer.truncated(100)));
+    }
+}
@@ -0,0 +1,167 @@
+package io.oreto.gungnir.cli.util;
+
+import org.joox.JOOX;
+import org.joox.Match;
+import org.junit.jupiter.api.Test;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.joox.JOOX.$;
+import static org.joox.JOOX.matchText;
+import static org.joox.JOOX.selector;
+import static org.joox.JOOX.tag;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PomTransformerTest {
+    static final String POM = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <project xmlns="http://maven.apache.org/POM/4.0.0"
+                     xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance"
+                     xsi:schemaLocation="http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd">
+                <modelVersion>4.0.0</modelVersion>
+
+                <groupId>io.oreto</groupId>
+                <artifactId>gungnir-launch</artifactId>
+                <version>1.0-SNAPSHOT</version>
+
+                <dependencies>
+                    <!-- core -->
+                    <dependency>
+                        <groupId>io.github.ross-oreto</groupId>
+                        <artifactId>gungnir</artifactId>
+                        <version>1.0</version>
+                    </dependency>
+                    <dependency>
+                        <groupId>com.fasterxml.jackson.core</groupId>
+                        <artifactId>jackson-databind</artifactId>
+                        <version>2.14.1</version>
+                    </dependency>
+                    <dependency>
+                        <groupId>org.jooq</groupId>
+                        <artifactId>jooq</artifactId>
+                        <version>3.17.6</version>
+                    </dependency>
+                    <dependency>
+                        <groupId>com.google.inject</groupId>
+                        <artifactId>guice</artifactId>
+                        <version>5.1.0</version>
+                    </dependency>
+                    <dependency>
+                        <groupId>gg.jte</groupId>
+                        <artifactId>jte</artifactId>
+                        <version>2.2.4</version>
+                    </dependency>
+                </dependencies>
+
+                <build>
+                    <plugins>
+                        <plugin>
+                            <groupId>org.codehaus.mojo</groupId>
+                            <artifactId>exec-maven-plugin</artifactId>
+                            <configuration>
+                                <mainClass>io.oreto.gungnir.launch.GungnirLaunch</mainClass>
+                            </configuration>
+                        </plugin>
+                    </plugins>
+                </build>
+            </project>
+            """;
+
+    static final List<String> GROUP_IDS = List.of("com.fasterxml.jackson.core", "org.jooq", "com.google.inject", "gg.jte");
+
+    /**
+     * The jOOX rewrite the transformer replaced
+     */
+    static String joox(String pom, List<String> removed, String groupId, String artifactId, String mainClass)
+            throws Exception {
+        Match doc = $(JOOX.builder().parse(new InputSource(new StringReader(pom))));
+        for (String removedGroupId : removed) {
+            Match test = doc.find(selector("dependency"))
+                    .find(tag("groupId"))
+                    .filter(matchText(removedGroupId.replaceAll("\\.", "\\\\" + ".")));
+            if (test.size() == 1)
+                test.parent().remove();
+        }
+        doc.child(tag("groupId")).text(groupId);
+        doc.child(tag("artifactId")).text(artifactId);
+        doc.find(selector("mainClass")).text(mainClass);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.write(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The parts of a pom the transformer may change, as jOOX reads them
+     */
+    static List<String> model(String pom) throws Exception {
+        Match doc = $(JOOX.builder().parse(new InputSource(new StringReader(pom))));
+        List<String> model = new ArrayList<>();
+        model.add(doc.child(tag("groupId")).text());
+        model.add(doc.child(tag("artifactId")).text());
+        model.add(doc.child(tag("version")).text());
+        for (Match dependency : doc.find(selector("dependency")).each())
+            model.add(dependency.child(tag("groupId")).text() + ':' + dependency.child(tag("artifactId")).text());
+        model.addAll(doc.find(selector("mainClass")).texts());
+        return model;
+    }
+
+    @Test
+    public void transformsLikeJoox() throws Exception {
+        // every combination of removed feature dependencies
+        for (int mask = 0; mask < 1 << GROUP_IDS.size(); mask++) {
+            List<String> removed = new ArrayList<>();
+            PomTransformer transformer = new PomTransformer()
+                    .groupId("com.acme.app")
+                    .artifactId("my-app")
+                    .mainClass("com.acme.app.MyApp");
+            for (int i = 0; i < GROUP_IDS.size(); i++) {
+                if ((mask & 1 << i) != 0) {
+                    removed.add(GROUP_IDS.get(i));
+                    transformer.removeDependencies(GROUP_IDS.get(i));
+                }
+            }
+            String expected = joox(POM, removed, "com.acme.app", "my-app", "com.acme.app.MyApp");
+            assertEquals(model(expected), model(transformer.transform(POM)), "removed " + removed);
+        }
+    }
+
+    @Test
+    public void copiesUneditedTextThrough() throws Exception {
+        assertEquals(POM, new PomTransformer().transform(POM));
+        String pom = new PomTransformer().groupId("com.acme.app").transform(POM);
+        assertEquals(POM.replace("<groupId>io.oreto</groupId>", "<groupId>com.acme.app</groupId>"), pom);
+    }
+
+    @Test
+    public void removesDependencyWithItsLine() throws Exception {
+        String pom = new PomTransformer().removeDependencies("org.jooq").transform(POM);
+        assertFalse(pom.contains("jooq"));
+        // the removed dependency takes its indentation and line break along, no blank line is left
+        assertTrue(pom.contains("        </dependency>\n        <dependency>\n            <groupId>com.google.inject</groupId>"));
+        assertEquals(POM.lines().count() - 5, pom.lines().count());
+    }
+
+    @Test
+    public void removesEveryDependencyOfAGroup() throws Exception {
+        String pom = POM.replace("<artifactId>jooq</artifactId>", "<artifactId>jooq</artifactId>\n        </dependency>"
+                + "\n        <dependency>\n            <groupId>org.jooq</groupId>\n            <artifactId>jooq-meta</artifactId>");
+        assertEquals(2, pom.split("<groupId>org.jooq</groupId>").length - 1);
+        // jOOX only removed a group with a single match, the transformer removes all of them
+        assertFalse(new PomTransformer().removeDependencies("org.jooq").transform(pom).contains("org.jooq"));
+    }
+
+    @Test
+    public void readsProjectElements() throws Exception {
+        assertEquals(Optional.of("1.0-SNAPSHOT"), PomTransformer.read(POM, "version"));
+        assertEquals(Optional.of("io.oreto.gungnir.launch.GungnirLaunch"), PomTransformer.read(POM, "mainClass"));
+        assertEquals(Optional.empty(), PomTransformer.read(POM, "packaging"));
+        assertEquals(List.of("io.github.ross-oreto", "com.fasterxml.jackson.core", "org.jooq", "com.google.inject", "gg.jte")
+                , new ArrayList<>(PomTransformer.dependencyGroupIds(POM)));
+    }
+}
@@ -0,0 +1,238 @@
+package io.oreto.gungnir.cli.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StrTest {
+
+    /**
+     * Replace with a regex alternation, longest search strings first, which is leftmost longest like the replacer
+     */
+    static String regexReplace(String s, Map<String, String> replacements, int max) {
+        List<String> searches = new ArrayList<>(replacements.keySet());
+        searches.removeIf(String::isEmpty);
+        if (searches.isEmpty())
+            return s;
+        searches.sort(Comparator.comparingInt(String::length).reversed());
+        Matcher matcher = Pattern.compile(searches.stream().map(Pattern::quote).collect(Collectors.joining("|")))
+                .matcher(s);
+        StringBuilder sb = new StringBuilder();
+        for (int count = 0; count < max && matcher.find(); count++)
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(replacements.get(matcher.group())));
+        return matcher.appendTail(sb).toString();
+    }
+
+    static String random(Random random, String alphabet, int min, int max) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = min + random.nextInt(max - min + 1); i > 0; i--)
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return sb.toString();
+    }
+
+    @Test
+    public void replacerMatchesRegexReplace() {
+        Random random = new Random(42);
+        for (int round = 0; round < 2000; round++) {
+            Map<String, String> replacements = new LinkedHashMap<>();
+            for (int i = random.nextInt(5); i >= 0; i--)
+                replacements.put(random(random, "abc", 1, 4), random(random, "xyz", 0, 3));
+            Str.Replacer replacer = Str.replacer(replacements);
+            String text = random(random, "abcé-", 0, 40);
+            int max = random.nextInt(4) == 0 ? random.nextInt(3) : Integer.MAX_VALUE;
+            String expected = regexReplace(text, replacements, max);
+            assertEquals(expected, Str.of(text).findAndReplace(replacer, max).toString()
+                    , () -> String.format("%s in \"%s\" max %d", replacements, text, max));
+        }
+    }
+
+    @Test
+    public void replacerPrefersLeftmostLongest() {
+        Str.Replacer replacer = Str.replacer(Map.of("GungnirLaunch", "MyApp", "gungnir-launch", "my-app"
+                , "Gungnir", "G", "launch", "L"));
+        assertEquals("MyApp my-app G L", Str.of("GungnirLaunch gungnir-launch Gungnir launch")
+                .findAndReplace(replacer).toString());
+        assertEquals("xb", Str.of("abcb").findAndReplace(Str.replacer(Map.of("abc", "x", "bcb", "y"))).toString());
+    }
+
+    @Test
+    public void replacerHandlesSurrogatesAndEmptySearches() {
+        Str.Replacer replacer = Str.replacer(Map.of("😀", ":)", "", "never", "é", "e"));
+        assertEquals("caf e :) 😁", Str.of("caf é 😀 😁").findAndReplace(replacer).toString());
+        assertEquals("nothing", Str.of("nothing").findAndReplace(Str.replacer(Map.of())).toString());
+    }
+
+    @Test
+    public void findAndReplaceMatchesStringReplace() {
+        Random random = new Random(7);
+        for (int round = 0; round < 2000; round++) {
+            String text = random(random, "ab-", 0, 30);
+            String search = random(random, "ab", 1, 3);
+            String replacement = random(random, "xy", 0, 4);
+            assertEquals(text.replace(search, replacement)
+                    , Str.of(text).findAndReplace(search, replacement).toString()
+                    , () -> String.format("%s -> %s in \"%s\"", search, replacement, text));
+            assertEquals(regexReplace(text, Map.of(search, replacement), 1)
+                    , Str.of(text).findAndReplace(search, replacement, 1).toString());
+        }
+    }
+
+    @Test
+    public void findAndReplaceFromTheTail() {
+        assertEquals("aab", Str.of("aaaa").findAndReplace("aa", "b", -1).toString());
+        assertEquals("bb", Str.of("aaaa").findAndReplace("aa", "b", -2).toString());
+        assertEquals("a-b-b", Str.of("a-a-a").findAndReplace("a", "b", -2).toString());
+        assertEquals("same", Str.of("same").findAndReplace("x", "y", -1).toString());
+    }
+
+    static final List<String> NUMBERS = List.of("", "0", "-0", "+0", "00", "007", "-007", "+5", "-", "+", ".", "-.", "+."
+            , "5.", ".5", "-.5", "+.5", "1.5", "-1.5", "1..5", "1.5.", "--1", "+-1", "-+1", "1-", " 1", "1 ", "1,000"
+            , "1e5", "1E5", "1.5e-3", "-1e5", "e5", "0x1F", "NaN", "Infinity", "-Infinity", "1_000", "\u0665\u0660"
+            , "2147483647", "2147483648", "-2147483648", "-2147483649", "+2147483647", "99999999999"
+            , "9223372036854775807", "9223372036854775808", "-9223372036854775808", "-9223372036854775809"
+            , "00000000000000000000000001", "123456789012345", "1234567890123456", "12345678901234567"
+            , "9007199254740993", "0.1", "0.2", "0.3", "3.141592653589793", "2.718281828459045235360287"
+            , "0.1234567890123456789", "123456789012345.6", "1.50000000000000000000", "0.0000000000000000000001"
+            , "0.00000000000000000000001", "-0.000", new BigDecimal(Double.MAX_VALUE).toPlainString(), "1" + "0".repeat(400)
+            , "0." + "0".repeat(400) + "1");
+
+    /**
+     * isNumber as it was before the fused parsers, the reference they must agree with
+     */
+    static boolean legacyIsNumber(CharSequence s, boolean integer) {
+        if (s == null)
+            return false;
+        int length = s.length();
+        if (Str.isBlank(s) || (length == 1 && !Character.isDigit(s.charAt(0))) || s.charAt(length - 1) == '.')
+            return false;
+        boolean dotted = false;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c == '-' || c == '+') {
+                if (i > 0)
+                    return false;
+            } else if (c == '.') {
+                if (dotted || integer)
+                    return false;
+                dotted = true;
+            } else if (!Character.isDigit(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static Optional<Integer> legacyToInteger(String s) {
+        try {
+            return legacyIsNumber(s, true) ? Optional.of(Integer.parseInt(s)) : Optional.empty();
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    static Optional<Long> legacyToLong(String s) {
+        try {
+            return legacyIsNumber(s, false) ? Optional.of(Long.parseLong(s)) : Optional.empty();
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    static Optional<Double> legacyToDouble(String s) {
+        try {
+            return legacyIsNumber(s, false) ? Optional.of(Double.parseDouble(s)) : Optional.empty();
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    static Optional<Integer> boxed(OptionalInt n) {
+        return n.isPresent() ? Optional.of(n.getAsInt()) : Optional.empty();
+    }
+
+    static Optional<Long> boxed(OptionalLong n) {
+        return n.isPresent() ? Optional.of(n.getAsLong()) : Optional.empty();
+    }
+
+    static Optional<Double> boxed(OptionalDouble n) {
+        // Double.equals compares bits, so -0.0 and 0.0 differ
+        return n.isPresent() ? Optional.of(n.getAsDouble()) : Optional.empty();
+    }
+
+    static void assertParity(String s) {
+        assertEquals(legacyToInteger(s), boxed(Str.parseInt(s)), () -> "parseInt " + s);
+        assertEquals(legacyToLong(s), boxed(Str.parseLong(s)), () -> "parseLong " + s);
+        assertEquals(legacyToDouble(s), boxed(Str.parseDouble(s)), () -> "parseDouble " + s);
+        assertEquals(legacyIsNumber(s, false), Str.isNumber(s), () -> "isNumber " + s);
+        assertEquals(legacyIsNumber(s, true), Str.isInteger(s), () -> "isInteger " + s);
+    }
+
+    @Test
+    public void parsesLikeValidateThenParse() {
+        NUMBERS.forEach(StrTest::assertParity);
+        assertEquals(OptionalInt.empty(), Str.parseInt(null));
+        assertEquals(OptionalDouble.empty(), Str.parseDouble(null));
+        assertFalse(Str.isNumber(null));
+    }
+
+    @Test
+    public void parsesEdgeCases() {
+        assertEquals(OptionalInt.of(Integer.MAX_VALUE), Str.parseInt("2147483647"));
+        assertEquals(OptionalInt.of(Integer.MIN_VALUE), Str.parseInt("-2147483648"));
+        assertEquals(OptionalInt.empty(), Str.parseInt("2147483648"));
+        assertEquals(OptionalLong.of(Long.MIN_VALUE), Str.parseLong("-9223372036854775808"));
+        assertEquals(OptionalLong.empty(), Str.parseLong("9223372036854775808"));
+        assertEquals(Optional.of(-0.0), boxed(Str.parseDouble("-0")));
+        assertEquals(Optional.of(-0.0), boxed(Str.parseDouble("-0.000")));
+        // exponents were never numbers to isNumber, so they are still rejected
+        assertEquals(OptionalDouble.empty(), Str.parseDouble("1e5"));
+        assertEquals(Optional.of(9007199254740992.0), boxed(Str.parseDouble("9007199254740993")));
+        assertEquals(Optional.of(0.1), boxed(Str.parseDouble("0.1")));
+    }
+
+    @Test
+    public void parsesRandomInputLikeValidateThenParse() {
+        Random random = new Random(11);
+        for (int round = 0; round < 20000; round++)
+            assertParity(random(random, "0123456789-+.e ", 0, 25));
+        for (int round = 0; round < 20000; round++) {
+            String digits = random(random, "0123456789", 1, 30);
+            int dot = random.nextInt(digits.length() + 1);
+            String s = (random.nextBoolean() ? "-" : "") + digits.substring(0, dot)
+                    + (dot < digits.length() ? "." : "") + digits.substring(dot);
+            assertParity(s);
+            assertEquals(Double.parseDouble(s), Str.parseDouble(s).orElseThrow(), () -> "parseDouble " + s);
+        }
+        for (int round = 0; round < 5000; round++) {
+            double d = random.nextBoolean() ? random.nextDouble() * Math.pow(10, random.nextInt(40) - 20)
+                    : Double.longBitsToDouble(random.nextLong());
+            if (Double.isNaN(d) || Double.isInfinite(d))
+                continue;
+            String s = new BigDecimal(d).toPlainString();
+            String shortest = BigDecimal.valueOf(d).toPlainString();
+            assertParity(s);
+            assertParity(shortest);
+            assertEquals(d, Str.parseDouble(shortest).orElseThrow(), () -> "parseDouble " + shortest);
+        }
+        for (int round = 0; round < 20000; round++) {
+            long n = random.nextBoolean() ? random.nextLong() : random.nextInt();
+            assertParity(Long.toString(n));
+            assertParity((n < 0 ? "-" : "+") + "0".repeat(random.nextInt(3)) + Math.abs(n));
+        }
+    }
+}